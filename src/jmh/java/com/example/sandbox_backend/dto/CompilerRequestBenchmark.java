@@ -0,0 +1,61 @@
+package com.example.sandbox_backend.dto;
+
+import com.example.sandbox_backend.util.ValidationUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handling of a WebSocket message that starts a run: the isJson check, Jackson parsing into a
+ * {@link CompilerRequest}, and base64 encoding of the source.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompilerRequestBenchmark {
+
+    // source size in characters
+    @Param({"256", "65536"})
+    public int sourceLength;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private String payload;
+    private CompilerRequest request;
+
+    @Setup
+    public void setUp() throws Exception {
+        String line = "printf(\"hello world\\n\");\n";
+        String source = line.repeat(sourceLength / line.length() + 1).substring(0, sourceLength);
+        request = new CompilerRequest("c", source);
+        payload = mapper.writeValueAsString(request);
+    }
+
+    @Benchmark
+    public boolean isJson() {
+        return ValidationUtil.isJson(payload);
+    }
+
+    @Benchmark
+    public CompilerRequest parse() throws Exception {
+        return mapper.readValue(payload, CompilerRequest.class);
+    }
+
+    @Benchmark
+    public String sourceCode2base64() {
+        return request.getSourceCode2base64();
+    }
+}
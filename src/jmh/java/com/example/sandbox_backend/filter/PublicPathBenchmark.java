@@ -0,0 +1,35 @@
+package com.example.sandbox_backend.filter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link JwtAuthenticationFilter#isPublicPath(String)} runs on every request; a public hit,
+ * a late public hit and a miss that scans the whole list.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PublicPathBenchmark {
+
+    @Param({"/api/v1/auth/login", "/code/exec", "/api/v1/profile/image/0123456789abcdef"})
+    public String path;
+
+    @Benchmark
+    public boolean isPublicPath() {
+        return JwtAuthenticationFilter.isPublicPath(path);
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.sandbox_backend.services;
+
+import com.example.sandbox_backend.mappings.Language;
+import com.pty4j.PtyProcess;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start of a run on each execution backend: acquire a sandbox (no warm pool), write the
+ * source, run it under a PTY until exit, release. Needs a Docker daemon with the sandbox images
+ * and bwrap with a rootfs per language; pass -Ddocker.socket-path, -Dsandbox.exec.docker-command
+ * and -Dsandbox.bwrap.rootfs-dir through jmh jvmArgs to point it elsewhere.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 20)
+@Fork(1)
+public class ExecutionBackendColdStartBenchmark {
+
+    private static final Map<String, String> HELLO = Map.of(
+            "python", "print('hi')\n",
+            "javascript", "console.log('hi');\n",
+            "php", "<?php echo 'hi';\n");
+
+    @Param({DockerExecutionBackend.NAME, BubblewrapExecutionBackend.NAME})
+    public String backend;
+
+    @Param({"python", "javascript", "php"})
+    public String language;
+
+    private final Language languages = new Language();
+    private ExecutionBackend executionBackend;
+    private ContainerReaper reaper;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        ExecutionBackendSelector selector = new ExecutionBackendSelector(new StandardEnvironment(), DockerExecutionBackend.NAME);
+        CompilerCache compilerCache = new CompilerCache(selector, false, 0, "");
+        ExecMetrics execMetrics = new ExecMetrics(registry, languages, compilerCache);
+        if (DockerExecutionBackend.NAME.equals(backend)) {
+            DockerClient dockerClient = new DockerClient(System.getProperty("docker.socket-path", "/var/run/docker.sock"));
+            reaper = new ContainerReaper(dockerClient, registry, "jmh", 32, 8, 30);
+            // pool size 0: every acquire starts a container
+            ContainerPoolService pool = new ContainerPoolService(languages, dockerClient, reaper, selector,
+                    compilerCache, registry, 0, 20, 0);
+            executionBackend = new DockerExecutionBackend(pool, dockerClient,
+                    new DockerHealthMonitor(dockerClient, registry, 15_000, 2_000), execMetrics, compilerCache,
+                    System.getProperty("sandbox.exec.docker-command", "docker"));
+        } else {
+            BubblewrapExecutionBackend bwrap = new BubblewrapExecutionBackend(execMetrics, "bwrap",
+                    System.getProperty("sandbox.bwrap.rootfs-dir", "/var/lib/sandbox/rootfs"),
+                    Files.createTempDirectory("bwrap-jmh").toString(),
+                    System.getProperty("sandbox.bwrap.cgroup-dir", ""), 1024);
+            bwrap.init();
+            executionBackend = bwrap;
+        }
+    }
+
+    @Benchmark
+    public int coldStart() throws Exception {
+        String sandboxId = executionBackend.acquire(language, "jmh").block();
+        try {
+            executionBackend.saveFile(sandboxId, "App" + languages.getLanguageMap().get(language), HELLO.get(language)).block();
+            PtyProcess process = executionBackend.startProcess(sandboxId, languages.getExecCommand().get(language));
+            return process.waitFor();
+        } finally {
+            executionBackend.release(sandboxId);
+        }
+    }
+
+    // removes the containers released by the last iteration, outside the measured time
+    @TearDown(Level.Iteration)
+    public void drain() {
+        if (reaper != null) {
+            reaper.drain();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (reaper != null) {
+            reaper.shutdown();
+        }
+    }
+}
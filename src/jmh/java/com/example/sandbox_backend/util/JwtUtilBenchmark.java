@@ -0,0 +1,75 @@
+package com.example.sandbox_backend.util;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.SecretKey;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request cost of authenticating a token in JwtAuthenticationFilter.
+ * {@code twoParses} is the previous path (validate, then parse again for the subject, each with
+ * a freshly built parser), {@code singleParse} verifies once with the shared parser and
+ * {@code cached} is the steady state for a returning cookie. {@code generateAccessToken} is the
+ * signing cost paid on login and refresh.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtUtilBenchmark {
+
+    private static final String SECRET = "benchmark-secret-benchmark-secret-benchmark-secret";
+    private static final String USER_ID = UUID.randomUUID().toString();
+    private static final List<String> ROLES = List.of("USER");
+
+    private JwtUtil jwtUtil;
+    private SecretKey key;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        jwtUtil = new JwtUtil(SECRET, 5, 2, 10_000);
+        key = Keys.hmacShaKeyFor(SECRET.getBytes());
+        token = jwtUtil.generateAccessToken(USER_ID, ROLES);
+    }
+
+    @Benchmark
+    public String generateAccessToken() {
+        return jwtUtil.generateAccessToken(USER_ID, ROLES);
+    }
+
+    @Benchmark
+    public UUID twoParses() {
+        Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token);
+        String subject = Jwts.parserBuilder().setSigningKey(key).build()
+                .parseClaimsJws(token)
+                .getBody()
+                .getSubject();
+        return UUID.fromString(subject);
+    }
+
+    @Benchmark
+    public UUID singleParse() {
+        return UUID.fromString(jwtUtil.parseClaims(token).orElseThrow().getSubject());
+    }
+
+    @Benchmark
+    public UUID cached() {
+        return jwtUtil.verifyAccessToken(token).orElseThrow().userId();
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.sandbox_backend.websocket;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packing one flush window of PTY chunks (64 reads of {@code chunkBytes}) into frames, as text
+ * (UTF-8 decode and re-encode) and as binary (buffer join).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PtyOutputFramerBenchmark {
+
+    private static final int CHUNKS = 64;
+    private static final int MAX_FRAME_BYTES = 16384;
+
+    @Param({"64", "1024"})
+    public int chunkBytes;
+
+    private final NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+    private byte[] chunk;
+    private PtyOutputFramer textFramer;
+    private PtyOutputFramer binaryFramer;
+
+    @Setup
+    public void setUp() {
+        // mixed ASCII and multibyte output, like a program printing non-English text
+        String line = "line é中文 output\r\n";
+        chunk = line.repeat(chunkBytes / line.length() + 1).getBytes(StandardCharsets.UTF_8);
+        chunk = Arrays.copyOf(chunk, chunkBytes);
+        textFramer = new PtyOutputFramer(bufferFactory, MAX_FRAME_BYTES, false);
+        binaryFramer = new PtyOutputFramer(bufferFactory, MAX_FRAME_BYTES, true);
+    }
+
+    @Benchmark
+    public int textFrames() {
+        return release(textFramer.toFrames(window()));
+    }
+
+    @Benchmark
+    public int binaryFrames() {
+        return release(binaryFramer.toFrames(window()));
+    }
+
+    private List<DataBuffer> window() {
+        List<DataBuffer> chunks = new ArrayList<>(CHUNKS);
+        for (int i = 0; i < CHUNKS; i++) {
+            DataBuffer buffer = bufferFactory.allocateBuffer(chunkBytes);
+            buffer.write(chunk);
+            chunks.add(buffer);
+        }
+        return chunks;
+    }
+
+    private static int release(List<WebSocketMessage> frames) {
+        int bytes = 0;
+        for (WebSocketMessage frame : frames) {
+            bytes += frame.getPayload().readableByteCount();
+            DataBufferUtils.release(frame.getPayload());
+        }
+        return bytes;
+    }
+}
@@ -1,16 +1,47 @@
 package com.example.sandbox_backend.config;
 
 import com.example.sandbox_backend.util.NoVncUserDetails;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 @Configuration
 public class CustomConfig {
 
+    private static final long PTY_THREAD_STACK_SIZE = 256 * 1024;
+
     @Bean
     public ConcurrentHashMap<String, NoVncUserDetails> user2noVncMap() {
         return new ConcurrentHashMap<>();
     }
+
+    /**
+     * Unbounded thread-per-task scheduler for blocking process and PTY I/O, so the number of
+     * interactive sessions is not capped by boundedElastic (10 x cores).
+     * pty4j blocks inside native (JNA) calls, which pins a virtual thread to its carrier on
+     * Java 21, so platform threads with a small stack are the default; virtual threads can be
+     * switched on with sandbox.pty.virtual-threads.
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler ptyScheduler(@Value("${sandbox.pty.virtual-threads:false}") boolean virtualThreads) {
+        ThreadFactory threadFactory = virtualThreads
+                ? Thread.ofVirtual().name("pty-", 0).factory()
+                : Thread.ofPlatform().name("pty-", 0).daemon(true).stackSize(PTY_THREAD_STACK_SIZE).factory();
+        return Schedulers.fromExecutorService(Executors.newThreadPerTaskExecutor(threadFactory), "pty");
+    }
+
+    /**
+     * CPU-bound image work (thumbnail rendering): one thread per core and a bounded queue, so
+     * bursts of uploads are rejected instead of piling up or landing on Netty event loops.
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler imageScheduler(@Value("${profile.image.queue-size:64}") int queueSize) {
+        return Schedulers.newBoundedElastic(Runtime.getRuntime().availableProcessors(), queueSize, "image");
+    }
 }
@@ -1,6 +1,11 @@
 package com.example.sandbox_backend.config;
 
 import com.example.sandbox_backend.filter.JwtAuthenticationFilter;
+import com.example.sandbox_backend.util.TimedPasswordEncoder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.ReactiveAuthenticationManager;
@@ -14,8 +19,13 @@ import org.springframework.security.web.server.SecurityWebFilterChain;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.reactive.CorsConfigurationSource;
 import org.springframework.web.cors.reactive.UrlBasedCorsConfigurationSource;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 public class SecurityConfig {
@@ -40,8 +50,13 @@ public class SecurityConfig {
                                 "/api/v1/auth/logout",
                                 "/api/v1/auth/login",
                                 "/api/v1/auth/refresh",
-                                "/api/v1/no-vnc/"
+                                "/api/v1/no-vnc/",
+                                "/actuator/health/**"
                         ).permitAll()
+                        // metrics name languages, queue depths and user-visible error rates
+                        .pathMatchers("/actuator/prometheus").hasRole("ADMIN")
+                        // flushing the artifact cache slows everyone's next compile down
+                        .pathMatchers("/api/v1/code/cache", "/api/v1/code/cache/**").hasRole("ADMIN")
                         .anyExchange().authenticated()
                 )
                 .addFilterBefore(jwtAuthenticationFilter, SecurityWebFiltersOrder.AUTHENTICATION)
@@ -69,18 +84,37 @@ public class SecurityConfig {
     }
 
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(MeterRegistry meterRegistry) {
+        return new TimedPasswordEncoder(new BCryptPasswordEncoder(), meterRegistry);
+    }
+
+    /**
+     * BCrypt runs here, one thread per core with a bounded queue. When the queue is full the
+     * task is rejected right away instead of queueing CPU work behind a login storm.
+     * Queue depth is exported as executor.queued{name="bcrypt"}.
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler passwordScheduler(MeterRegistry meterRegistry,
+                                       @Value("${auth.password.queue-size:64}") int queueSize) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                Thread.ofPlatform().name("bcrypt-", 0).daemon(true).factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+        return Schedulers.fromExecutorService(
+                ExecutorServiceMetrics.monitor(meterRegistry, executor, "bcrypt"), "bcrypt");
     }
 
     @Bean
     public ReactiveAuthenticationManager authenticationManager(
             ReactiveUserDetailsService userDetailsService,
-            PasswordEncoder passwordEncoder) {
+            PasswordEncoder passwordEncoder,
+            @Qualifier("passwordScheduler") Scheduler passwordScheduler) {
 
         UserDetailsRepositoryReactiveAuthenticationManager authManager =
                 new UserDetailsRepositoryReactiveAuthenticationManager(userDetailsService);
         authManager.setPasswordEncoder(passwordEncoder);
+        authManager.setScheduler(passwordScheduler);
         return authManager;
     }
 }
@@ -0,0 +1,42 @@
+package com.example.sandbox_backend.controller;
+
+import com.example.sandbox_backend.mappings.Language;
+import com.example.sandbox_backend.services.ArtifactCacheService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+@RestController
+@RequestMapping("/api/v1/code/cache")
+public class ArtifactCacheController {
+
+    private final ArtifactCacheService artifactCacheService;
+    private final Language language;
+
+    public ArtifactCacheController(ArtifactCacheService artifactCacheService, Language language) {
+        this.artifactCacheService = artifactCacheService;
+        this.language = language;
+    }
+
+    @DeleteMapping
+    public Mono<ResponseEntity<String>> invalidateAll() {
+        // invalidate deletes files, which blocks
+        return Mono.fromCallable(() -> artifactCacheService.invalidate(null))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(count -> ResponseEntity.ok("Invalidated " + count + " cached artifacts"));
+    }
+
+    @DeleteMapping("/{language}")
+    public Mono<ResponseEntity<String>> invalidateLanguage(@PathVariable("language") String lang) {
+        if (!language.isCompiled(lang)) {
+            return Mono.just(ResponseEntity.badRequest().body("Unsupported language: " + lang));
+        }
+        return Mono.fromCallable(() -> artifactCacheService.invalidate(lang))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(count -> ResponseEntity.ok("Invalidated " + count + " cached artifacts"));
+    }
+}
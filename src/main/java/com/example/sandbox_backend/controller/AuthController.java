@@ -3,12 +3,15 @@ package com.example.sandbox_backend.controller;
 import com.example.sandbox_backend.services.AuthService;
 import com.example.sandbox_backend.dto.AuthRequest;
 import com.example.sandbox_backend.dto.SignupRequest;
+import com.example.sandbox_backend.util.RequestUtil;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseCookie;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Mono;
 
 import java.time.Duration;
@@ -24,15 +27,16 @@ public class AuthController {
     @Value("${jwt.refresh-token-days}") long refresh_expires_days;
 
     @PostMapping("/signup")
-    public Mono<ResponseEntity<String>> signup(@RequestBody SignupRequest req) {
-        return authService.signup(req)
+    public Mono<ResponseEntity<String>> signup(@RequestBody SignupRequest req, ServerHttpRequest request) {
+        return authService.signup(req, RequestUtil.clientIp(request))
                 .map(msg -> ResponseEntity.ok().body(msg))
+                .onErrorResume(ResponseStatusException.class, this::statusResponse)
                 .onErrorResume(e -> Mono.just(ResponseEntity.badRequest().body(e.getMessage())));
     }
 
     @PostMapping("/login")
-    public Mono<ResponseEntity<String>> login(@RequestBody AuthRequest req) {
-        return authService.login(req)
+    public Mono<ResponseEntity<String>> login(@RequestBody AuthRequest req, ServerHttpRequest request) {
+        return authService.login(req, RequestUtil.clientIp(request))
                 .map(authResponse -> {
                     ResponseCookie accessCookie = ResponseCookie.from("access_token", authResponse.getAccessToken())
                             .httpOnly(true)
@@ -56,6 +60,7 @@ public class AuthController {
                             })
                             .body("Login successful");
                 })
+                .onErrorResume(ResponseStatusException.class, this::statusResponse)
                 .onErrorResume(e -> Mono.just(ResponseEntity.badRequest().body("Login failed")));
     }
 
@@ -94,4 +99,9 @@ public class AuthController {
         return authService.logout(refreshToken)
                 .then(Mono.just(ResponseEntity.ok().body("Logged out")));
     }
-}
\ No newline at end of file
+
+    // Rate limiting and a saturated hashing pool answer with 429/503 instead of a generic 400
+    private Mono<ResponseEntity<String>> statusResponse(ResponseStatusException e) {
+        return Mono.just(ResponseEntity.status(e.getStatusCode()).body(e.getReason()));
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.sandbox_backend.controller;
+
+import com.example.sandbox_backend.dto.RunRequest;
+import com.example.sandbox_backend.services.CodeRunService;
+import com.example.sandbox_backend.util.RequestUtil;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+
+@RestController
+@RequestMapping("/api/v1/code/run")
+public class CodeRunController {
+
+    private final CodeRunService codeRunService;
+
+    public CodeRunController(CodeRunService codeRunService) {
+        this.codeRunService = codeRunService;
+    }
+
+    @PostMapping
+    public Mono<ResponseEntity<?>> run(@RequestBody RunRequest req, ServerHttpRequest request) {
+        return codeRunService.run(req, RequestUtil.clientIp(request))
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .onErrorResume(ResponseStatusException.class, this::statusResponse);
+    }
+
+    @PostMapping("/async")
+    public Mono<ResponseEntity<?>> submit(@RequestBody RunRequest req, ServerHttpRequest request) {
+        return codeRunService.submit(req, RequestUtil.clientIp(request))
+                .<ResponseEntity<?>>map(status -> ResponseEntity.accepted()
+                        .location(URI.create("/api/v1/code/run/" + status.runId()))
+                        .body(status))
+                .onErrorResume(ResponseStatusException.class, this::statusResponse);
+    }
+
+    @GetMapping("/{runId}")
+    public Mono<ResponseEntity<?>> status(@PathVariable("runId") String runId, ServerHttpRequest request) {
+        return codeRunService.status(runId, RequestUtil.clientIp(request))
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.status(HttpStatus.NOT_FOUND).body("Unknown run " + runId));
+    }
+
+    private Mono<ResponseEntity<?>> statusResponse(ResponseStatusException e) {
+        return Mono.just(ResponseEntity.status(e.getStatusCode()).body(e.getReason()));
+    }
+}
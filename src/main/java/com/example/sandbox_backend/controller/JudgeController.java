@@ -0,0 +1,31 @@
+package com.example.sandbox_backend.controller;
+
+import com.example.sandbox_backend.dto.JudgeCaseResult;
+import com.example.sandbox_backend.dto.JudgeRequest;
+import com.example.sandbox_backend.services.JudgeService;
+import com.example.sandbox_backend.util.RequestUtil;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+
+@RestController
+@RequestMapping("/api/v1/code/judge")
+public class JudgeController {
+
+    private final JudgeService judgeService;
+
+    public JudgeController(JudgeService judgeService) {
+        this.judgeService = judgeService;
+    }
+
+    // One JSON object per line as each test case finishes; errors before the first case keep their status
+    @PostMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<JudgeCaseResult> judge(@RequestBody JudgeRequest req, ServerHttpRequest request) {
+        return judgeService.judge(req, RequestUtil.clientIp(request));
+    }
+}
@@ -1,17 +1,27 @@
 package com.example.sandbox_backend.controller;
 
+import com.example.sandbox_backend.entities.ProfileImage;
+import com.example.sandbox_backend.services.ProfileImageService;
 import com.example.sandbox_backend.services.UserProfileService;
 import com.example.sandbox_backend.dto.UserProfileRequestDTO;
 import com.example.sandbox_backend.entities.CustomUserDetails;
+import com.example.sandbox_backend.util.ImageTypeSniffer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.security.core.context.ReactiveSecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.function.Function;
 
 @RestController
@@ -19,10 +29,17 @@ import java.util.function.Function;
 @Slf4j
 public class UserProfileController {
 
+    // Image URLs are content addressed, so a cached copy never goes stale
+    private static final CacheControl IMAGE_CACHE_CONTROL = CacheControl.maxAge(Duration.ofDays(365))
+            .cachePrivate()
+            .immutable();
+
     private final UserProfileService profileService;
+    private final ProfileImageService profileImageService;
 
-    public UserProfileController(UserProfileService profileService) {
+    public UserProfileController(UserProfileService profileService, ProfileImageService profileImageService) {
         this.profileService = profileService;
+        this.profileImageService = profileImageService;
     }
 
     @GetMapping
@@ -30,6 +47,54 @@ public class UserProfileController {
         return profileService.getProfileDetails();
     }
 
+    /**
+     * Serves the original image, or with {@code size} one of the square thumbnails
+     * (falling back to the original when no thumbnail could be rendered).
+     */
+    @GetMapping("/image/{hash:[0-9a-f]{64}}")
+    public Mono<ResponseEntity<Flux<DataBuffer>>> getProfileImage(@PathVariable("hash") String hash,
+                                                                  @RequestParam(value = "size", required = false) Integer size,
+                                                                  ServerWebExchange exchange) {
+        if (size != null && !ProfileImageService.isThumbnailSize(size)) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        String etag = "\"" + hash + (size != null ? "-" + size : "") + "\"";
+        List<String> ifNoneMatch = exchange.getRequest().getHeaders().getIfNoneMatch();
+        if (ifNoneMatch.contains(etag)) {
+            return Mono.just(notModified(etag));
+        }
+
+        Mono<ProfileImage> original = profileImageService.find(hash, ProfileImage.ORIGINAL);
+        Mono<ProfileImage> image = size == null
+                ? original
+                : profileImageService.find(hash, String.valueOf(size)).switchIfEmpty(original);
+        return image
+                // "*" only matches an image that exists
+                .map(found -> ifNoneMatch.contains("*") ? notModified(etag) : ResponseEntity.ok()
+                        .eTag(etag)
+                        .cacheControl(IMAGE_CACHE_CONTROL)
+                        .contentType(contentType(found))
+                        .contentLength(found.getData().length)
+                        .body(Flux.just(exchange.getResponse().bufferFactory().wrap(found.getData()))))
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    private static ResponseEntity<Flux<DataBuffer>> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .eTag(etag)
+                .cacheControl(IMAGE_CACHE_CONTROL)
+                .build();
+    }
+
+    // Images migrated from the old profile column have no recorded type
+    private static MediaType contentType(ProfileImage image) {
+        String stored = image.getContentType();
+        if (stored == null || stored.equals(MediaType.APPLICATION_OCTET_STREAM_VALUE)) {
+            return ImageTypeSniffer.sniff(image.getData()).orElse(MediaType.APPLICATION_OCTET_STREAM);
+        }
+        return MediaType.parseMediaType(stored);
+    }
+
     // JSON PATCH
     @PatchMapping(value = "/update", consumes = MediaType.APPLICATION_JSON_VALUE)
     public Mono<?> updateProfileJson(@RequestBody UserProfileRequestDTO dto) {
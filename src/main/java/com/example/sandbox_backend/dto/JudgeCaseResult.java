@@ -0,0 +1,21 @@
+package com.example.sandbox_backend.dto;
+
+/**
+ * Verdict of one test case, streamed as soon as the case finishes. A failed compile is
+ * reported once with index -1 and the compiler output in {@code stderr}.
+ */
+public record JudgeCaseResult(int index,
+                              String verdict,
+                              String stdout,
+                              String stderr,
+                              int exitCode,
+                              long wallTimeMs) {
+
+    public static final String ACCEPTED = "accepted";
+    public static final String WRONG_ANSWER = "wrong_answer";
+    public static final String TIME_LIMIT_EXCEEDED = "time_limit_exceeded";
+    public static final String MEMORY_LIMIT_EXCEEDED = "memory_limit_exceeded";
+    public static final String OUTPUT_LIMIT_EXCEEDED = "output_limit_exceeded";
+    public static final String RUNTIME_ERROR = "runtime_error";
+    public static final String COMPILE_ERROR = "compile_error";
+}
@@ -0,0 +1,17 @@
+package com.example.sandbox_backend.dto;
+
+import java.util.List;
+
+/**
+ * A program judged against test cases. Per-case limits override the request-wide ones; unset
+ * limits fall back to the defaults under {@code code.judge.*}.
+ */
+public record JudgeRequest(String language,
+                           String sourceCode,
+                           List<TestCase> testCases,
+                           Long timeLimitMs,
+                           Long memoryLimitBytes) {
+
+    public record TestCase(String input, String expectedOutput, Long timeLimitMs, Long memoryLimitBytes) {
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.sandbox_backend.dto;
+
+/**
+ * Non-interactive run: the source, its stdin, and optional limits (defaults and upper bounds
+ * are configured under {@code code.run.*}).
+ */
+public record RunRequest(String language, String sourceCode, String stdin, Long timeLimitMs, Long outputLimitBytes) {
+}
@@ -0,0 +1,13 @@
+package com.example.sandbox_backend.dto;
+
+/**
+ * Outcome of a non-interactive run. {@code cpuTimeMs} is null when the backend cannot measure it.
+ */
+public record RunResult(String stdout,
+                        String stderr,
+                        int exitCode,
+                        long wallTimeMs,
+                        Long cpuTimeMs,
+                        boolean timedOut,
+                        boolean outputTruncated) {
+}
@@ -0,0 +1,7 @@
+package com.example.sandbox_backend.dto;
+
+/**
+ * State of an asynchronous run: queued, running, done (with {@code result}) or failed (with {@code error}).
+ */
+public record RunStatusResponse(String runId, String status, RunResult result, String error) {
+}
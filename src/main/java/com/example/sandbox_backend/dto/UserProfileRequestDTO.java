@@ -14,5 +14,7 @@ public class UserProfileRequestDTO {
     private String fullName;
     private String email;
     private String bio;
-    private String profileImage;
+    private String profileImage;      // base64, only accepted on update
+    private String profileImageHash;
+    private String profileImageUrl;
 }
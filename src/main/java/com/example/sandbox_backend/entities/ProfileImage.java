@@ -0,0 +1,27 @@
+package com.example.sandbox_backend.entities;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Table("profile_images")
+public class ProfileImage {
+    public static final String ORIGINAL = "original";
+
+    @Id
+    private UUID id;
+    @Column("user_id")
+    private UUID userId;
+    private String variant;        // "original" or a thumbnail size
+    private String hash;           // sha-256 hex of the original image, shared by its thumbnails
+    @Column("content_type")
+    private String contentType;
+    private byte[] data;
+}
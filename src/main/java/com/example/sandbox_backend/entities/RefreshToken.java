@@ -2,6 +2,7 @@ package com.example.sandbox_backend.entities;
 
 import lombok.*;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
 import org.springframework.data.relational.core.mapping.Table;
 
 import java.util.UUID;
@@ -15,7 +16,8 @@ public class RefreshToken {
     @Id
     private UUID id;
     private UUID userId;
-    private String token;
+    @Column("token_hash")
+    private String tokenHash; // sha-256 hex of the token, the token itself is never stored
     private long expiresAt;  // epoch millis instead of OffsetDateTime
 }
 
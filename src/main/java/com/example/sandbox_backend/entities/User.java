@@ -23,7 +23,7 @@ public class User {
     private String bio;
     private String password;  // BCrypt hashed
     private List<String> roles;     // e.g. "USER"
-    @Column("profile_image")
-    private byte[] profileImage; // <--- binary image data
+    @Column("profile_image_hash")
+    private String profileImageHash; // sha-256 of the image in profile_images, null when none
 }
 
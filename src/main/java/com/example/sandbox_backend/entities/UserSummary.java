@@ -0,0 +1,17 @@
+package com.example.sandbox_backend.entities;
+
+import lombok.*;
+
+import java.util.UUID;
+
+/**
+ * The columns authentication needs, without the password hash or profile image.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserSummary {
+    private UUID id;
+    private String username;
+    private String email;
+}
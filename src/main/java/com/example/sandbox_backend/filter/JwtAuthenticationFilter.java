@@ -1,7 +1,7 @@
 package com.example.sandbox_backend.filter;
 
-import com.example.sandbox_backend.repositories.UserRepository;
 import com.example.sandbox_backend.entities.CustomUserDetails;
+import com.example.sandbox_backend.services.UserDetailsCache;
 import com.example.sandbox_backend.util.JwtUtil;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpHeaders;
@@ -17,6 +17,7 @@ import org.springframework.web.server.WebFilterChain;
 import reactor.core.publisher.Mono;
 
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -25,7 +26,7 @@ import java.util.stream.Collectors;
 public class JwtAuthenticationFilter implements WebFilter {
 
     private final JwtUtil jwtUtil;
-    private final UserRepository userRepository;
+    private final UserDetailsCache userDetailsCache;
 
     private static final List<String> PUBLIC_PATHS = List.of(
             "/api/v1/auth/login",
@@ -48,16 +49,19 @@ public class JwtAuthenticationFilter implements WebFilter {
             return chain.filter(exchange);
         }
 
-        if (!jwtUtil.validateAccessToken(token)) {
+        Optional<JwtUtil.VerifiedToken> verified = jwtUtil.verifyAccessToken(token);
+        if (verified.isEmpty()) {
             exchange.getResponse().setStatusCode(HttpStatus.UNAUTHORIZED);
             return exchange.getResponse().setComplete();
         }
 
-        UUID userId = jwtUtil.getUserId(token);
+        UUID userId = verified.get().userId();
+        List<String> roles = verified.get().roles();
 
-        return userRepository.findById(userId)
+        // Roles come from the verified claims; the password hash is not needed past login
+        return userDetailsCache.get(userId)
                 .flatMap(user -> {
-                    var authorities = user.getRoles()
+                    var authorities = roles
                             .stream()
                             .map(SimpleGrantedAuthority::new)
                             .collect(Collectors.toList());
@@ -66,8 +70,8 @@ public class JwtAuthenticationFilter implements WebFilter {
                             user.getId(),
                             user.getUsername(),
                             user.getEmail(),
-                            user.getPassword(),
-                            user.getRoles()
+                            null,
+                            roles
                     );
 
                     var auth = new UsernamePasswordAuthenticationToken(
@@ -100,7 +104,7 @@ public class JwtAuthenticationFilter implements WebFilter {
         return null;
     }
 
-    private boolean isPublicPath(String path) {
+    static boolean isPublicPath(String path) {
         return PUBLIC_PATHS.stream().anyMatch(path::startsWith);
     }
 }
@@ -28,13 +28,42 @@ public class Language {
         put("cpp", "g++ App.cpp -o App && stdbuf -o0 ./App");
         put("javascript", "stdbuf -o0 node App.js");
         put("java", "javac App.java && stdbuf -o0 java App");
-        put("rust", "rustc App.rs -o App && stdbuf -o0 ./App");
+        put("rust", "rustc $RUSTC_CACHE_FLAGS App.rs -o App && stdbuf -o0 ./App");
         put("python", "stdbuf -o0 python3 App.py");
         put("go", "go build -o App App.go && stdbuf -o0 ./App");
         put("php", "stdbuf -o0 php App.php");
         put("csharp", "mcs App.cs -out:App.exe && stdbuf -o0 mono App.exe");
     }};
 
+    // Compiled languages are run in two steps so the compiled artifact can be cached.
+    final Map<String, String> compileCommand = new HashMap<String, String>() {{
+        put("c", "gcc App.c -o App");
+        put("cpp", "g++ App.cpp -o App");
+        put("java", "javac -d out App.java");
+        put("rust", "rustc $RUSTC_CACHE_FLAGS App.rs -o App");
+        put("go", "go build -o App App.go");
+        put("csharp", "mcs App.cs -out:App.exe");
+    }};
+
+    final Map<String, String> runCommand = new HashMap<String, String>() {{
+        put("c", "stdbuf -o0 ./App");
+        put("cpp", "stdbuf -o0 ./App");
+        put("java", "stdbuf -o0 java -cp out App");
+        put("rust", "stdbuf -o0 ./App");
+        put("go", "stdbuf -o0 ./App");
+        put("csharp", "stdbuf -o0 mono App.exe");
+    }};
+
+    // Path (relative to the sandbox workdir) of what the compile step produces
+    final Map<String, String> artifactPath = new HashMap<String, String>() {{
+        put("c", "App");
+        put("cpp", "App");
+        put("java", "out");
+        put("rust", "App");
+        put("go", "App");
+        put("csharp", "App.exe");
+    }};
+
 
     public boolean isLanguageValid(String language) {
         return languageMap.containsKey(language);
@@ -47,4 +76,20 @@ public class Language {
     public Map<String, String> getExecCommand() {
         return execCommand;
     }
+
+    public boolean isCompiled(String language) {
+        return compileCommand.containsKey(language);
+    }
+
+    public Map<String, String> getCompileCommand() {
+        return compileCommand;
+    }
+
+    public Map<String, String> getRunCommand() {
+        return runCommand;
+    }
+
+    public Map<String, String> getArtifactPath() {
+        return artifactPath;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,13 @@
+package com.example.sandbox_backend.repositories;
+
+import com.example.sandbox_backend.entities.ProfileImage;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import reactor.core.publisher.Mono;
+
+import java.util.UUID;
+
+public interface ProfileImageRepository extends ReactiveCrudRepository<ProfileImage, UUID> {
+    Mono<ProfileImage> findByUserIdAndVariant(UUID userId, String variant);
+
+    Mono<ProfileImage> findFirstByHashAndVariant(String hash, String variant);
+}
@@ -1,12 +1,20 @@
 package com.example.sandbox_backend.repositories;
 
 import com.example.sandbox_backend.entities.RefreshToken;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import reactor.core.publisher.Mono;
 
 import java.util.UUID;
 
 public interface RefreshTokenRepository extends ReactiveCrudRepository<RefreshToken, UUID> {
-    Mono<RefreshToken> findByToken(String token);
-    Mono<Void> deleteByToken(String token);
+    Mono<RefreshToken> findByTokenHash(String tokenHash);
+    Mono<Void> deleteByTokenHash(String tokenHash);
+
+    // Bounded so a large backlog is purged in short transactions
+    @Modifying
+    @Query("DELETE FROM refresh_tokens WHERE id IN "
+            + "(SELECT id FROM refresh_tokens WHERE expires_at < :now LIMIT :limit)")
+    Mono<Integer> deleteExpired(long now, int limit);
 }
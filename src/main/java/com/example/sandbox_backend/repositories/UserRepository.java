@@ -1,6 +1,8 @@
 package com.example.sandbox_backend.repositories;
 
 import com.example.sandbox_backend.entities.User;
+import com.example.sandbox_backend.entities.UserSummary;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import reactor.core.publisher.Mono;
 
@@ -8,4 +10,7 @@ import java.util.UUID;
 
 public interface UserRepository extends ReactiveCrudRepository<User, UUID> {
     Mono<User> findByEmail(String email);
+
+    @Query("SELECT id, username, email FROM users WHERE id = :id")
+    Mono<UserSummary> findSummaryById(UUID id);
 }
@@ -0,0 +1,253 @@
+package com.example.sandbox_backend.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed cache of compiled artifacts (binary, class files, exe) stored as the tar
+ * archives Docker hands out, keyed by language, toolchain image id and source. Entries live on
+ * local disk and are evicted least-recently-used once {@code sandbox.artifact-cache.max-bytes}
+ * is exceeded.
+ */
+@Service
+public class ArtifactCacheService {
+
+    private static final Logger log = LoggerFactory.getLogger(ArtifactCacheService.class);
+    private static final String SUFFIX = ".tar";
+
+    private final DockerClient dockerClient;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final Path cacheDir;
+    private final long maxBytes;
+
+    private final Map<String, String> imageDigests = new ConcurrentHashMap<>();
+    // file name -> size, in access order; guarded by "this"
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    public ArtifactCacheService(DockerClient dockerClient,
+                                MeterRegistry meterRegistry,
+                                @Value("${sandbox.artifact-cache.enabled:true}") boolean enabled,
+                                @Value("${sandbox.artifact-cache.dir:${java.io.tmpdir}/sandbox-artifacts}") String cacheDir,
+                                @Value("${sandbox.artifact-cache.max-bytes:536870912}") long maxBytes) {
+        this.dockerClient = dockerClient;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.cacheDir = Path.of(cacheDir);
+        this.maxBytes = maxBytes;
+    }
+
+    @PostConstruct
+    void init() throws IOException {
+        Gauge.builder("sandbox.artifact_cache.size", this, ArtifactCacheService::getTotalBytes)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(cacheDir);
+
+        // Rebuild the LRU order from what survived a restart, oldest first
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            List<Path> entries = files
+                    .filter(path -> path.getFileName().toString().endsWith(SUFFIX))
+                    .sorted(Comparator.comparingLong(ArtifactCacheService::lastModified))
+                    .toList();
+            synchronized (this) {
+                for (Path entry : entries) {
+                    long size = Files.size(entry);
+                    index.put(entry.getFileName().toString(), size);
+                    totalBytes += size;
+                }
+            }
+        }
+        evict();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Hash of (language, toolchain image id, source) identifying the compiled artifact.
+     */
+    public Mono<String> cacheKey(String language, String sourceCode) {
+        return imageDigest(language)
+                .map(digest -> sha256(language + '\0' + digest + '\0' + sourceCode));
+    }
+
+    /**
+     * Emits the cached tar archive, or completes empty on a miss.
+     */
+    public Mono<byte[]> get(String language, String key) {
+        if (!enabled) {
+            return Mono.empty();
+        }
+        String fileName = fileName(language, key);
+        return Mono.fromCallable(() -> {
+                    synchronized (this) {
+                        if (index.get(fileName) == null) {
+                            return null;
+                        }
+                    }
+                    try {
+                        return Files.readAllBytes(cacheDir.resolve(fileName));
+                    } catch (NoSuchFileException e) {
+                        remove(fileName);
+                        return null;
+                    }
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .doOnNext(tar -> counter(language, "hit").increment())
+                .switchIfEmpty(Mono.fromRunnable(() -> counter(language, "miss").increment()));
+    }
+
+    public Mono<Void> put(String language, String key, byte[] tar) {
+        if (!enabled || tar.length > maxBytes) {
+            return Mono.empty();
+        }
+        String fileName = fileName(language, key);
+        return Mono.fromCallable(() -> {
+                    Path target = cacheDir.resolve(fileName);
+                    Path temp = Files.createTempFile(cacheDir, "artifact", ".tmp");
+                    Files.write(temp, tar);
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    synchronized (this) {
+                        Long previous = index.put(fileName, (long) tar.length);
+                        totalBytes += tar.length - (previous == null ? 0 : previous);
+                    }
+                    evict();
+                    return fileName;
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .then();
+    }
+
+    /**
+     * Drops every cached artifact for {@code language}, or everything when it is {@code null}.
+     * Cached image ids are forgotten as well so rebuilt toolchain images are picked up.
+     *
+     * @return number of removed entries
+     */
+    public int invalidate(String language) {
+        List<String> removed = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Long> entry = it.next();
+                if (language == null || entry.getKey().startsWith(language + "-")) {
+                    totalBytes -= entry.getValue();
+                    removed.add(entry.getKey());
+                    it.remove();
+                }
+            }
+        }
+        removed.forEach(this::deleteFile);
+
+        if (language == null) {
+            imageDigests.clear();
+        } else {
+            imageDigests.remove(language);
+        }
+        log.info("Invalidated {} cached artifacts for {}", removed.size(), language == null ? "all languages" : language);
+        return removed.size();
+    }
+
+    private Mono<String> imageDigest(String language) {
+        String cached = imageDigests.get(language);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+        return dockerClient.inspectImage(language + "-image")
+                .map(json -> json.path("Id").asText())
+                .doOnNext(digest -> imageDigests.put(language, digest));
+    }
+
+    private void evict() {
+        List<String> evicted = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+            while (totalBytes > maxBytes && it.hasNext()) {
+                Map.Entry<String, Long> eldest = it.next();
+                totalBytes -= eldest.getValue();
+                evicted.add(eldest.getKey());
+                it.remove();
+            }
+        }
+        evicted.forEach(this::deleteFile);
+    }
+
+    private synchronized void remove(String fileName) {
+        Long size = index.remove(fileName);
+        if (size != null) {
+            totalBytes -= size;
+        }
+    }
+
+    private void deleteFile(String fileName) {
+        try {
+            Files.deleteIfExists(cacheDir.resolve(fileName));
+        } catch (IOException e) {
+            log.warn("Could not delete cached artifact {}", fileName, e);
+        }
+    }
+
+    private Counter counter(String language, String result) {
+        return Counter.builder("sandbox.artifact_cache.requests")
+                .tag("language", language)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static String fileName(String language, String key) {
+        return language + "-" + key + SUFFIX;
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -10,14 +10,23 @@ import com.example.sandbox_backend.entities.RefreshToken;
 import com.example.sandbox_backend.entities.User;
 import com.example.sandbox_backend.util.JwtUtil;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.authentication.ReactiveAuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 @Service
 @RequiredArgsConstructor
@@ -28,31 +37,44 @@ public class AuthService {
     private final PasswordEncoder passwordEncoder;
     private final ReactiveAuthenticationManager reactiveAuthenticationManager;
     private final JwtUtil jwtUtil;
+    private final LoginRateLimiter loginRateLimiter;
+    @Qualifier("passwordScheduler")
+    private final Scheduler passwordScheduler;
 
-    public Mono<String> signup(SignupRequest req) {
+    public Mono<String> signup(SignupRequest req, String clientIp) {
         if (req.getEmail() == null || req.getEmail().isBlank() ||
                 req.getPassword() == null || req.getPassword().isBlank()) {
             return Mono.error(new RuntimeException("Email and password are required"));
         }
+        if (!loginRateLimiter.tryAcquire(null, clientIp)) {
+            return Mono.error(tooManyAttempts());
+        }
 
         return userRepository.findByEmail(req.getEmail().toLowerCase())
                 .flatMap(existing -> Mono.<String>error(new RuntimeException("Email already exists")))
-                .switchIfEmpty(Mono.defer(() -> {
-                    User user = User.builder()
-                            .email(req.getEmail().toLowerCase())
-                            .password(passwordEncoder.encode(req.getPassword()))
-                            .roles(List.of("USER"))
-                            .build();
-
-                    return userRepository.save(user)
-                            .thenReturn("User registered successfully");
-                }));
+                .switchIfEmpty(Mono.fromCallable(() -> passwordEncoder.encode(req.getPassword()))
+                        .subscribeOn(passwordScheduler)
+                        .onErrorMap(RejectedExecutionException.class, e -> serverBusy())
+                        .flatMap(hash -> {
+                            User user = User.builder()
+                                    .email(req.getEmail().toLowerCase())
+                                    .password(hash)
+                                    .roles(List.of("USER"))
+                                    .build();
+
+                            return userRepository.save(user)
+                                    .thenReturn("User registered successfully");
+                        }));
     }
 
-    public Mono<AuthResponse> login(AuthRequest req) {
+    public Mono<AuthResponse> login(AuthRequest req, String clientIp) {
+        if (!loginRateLimiter.tryAcquire(req.getEmail(), clientIp)) {
+            return Mono.error(tooManyAttempts());
+        }
         UsernamePasswordAuthenticationToken authToken =
                 new UsernamePasswordAuthenticationToken(req.getEmail(), req.getPassword());
 
+        // Password verification runs on passwordScheduler (see SecurityConfig)
         return reactiveAuthenticationManager.authenticate(authToken)
                 .flatMap(auth -> {
                     CustomUserDetails userDetails = (CustomUserDetails) auth.getPrincipal();
@@ -69,19 +91,21 @@ public class AuthService {
 
                     RefreshToken token = RefreshToken.builder()
                             .userId(userDetails.getId())
-                            .token(refresh)
+                            .tokenHash(hashToken(refresh))
                             .expiresAt(expiresAt)
                             .build();
 
                     return refreshTokenRepository.save(token)
                             .map(saved -> new AuthResponse(access, refresh));
                 })
-                .onErrorMap(e -> new RuntimeException("Invalid credentials"));
+                .onErrorMap(e -> e instanceof RejectedExecutionException
+                        ? serverBusy()
+                        : new RuntimeException("Invalid credentials"));
     }
 
 
     public Mono<AuthResponse> refresh(String refreshToken) {
-        return refreshTokenRepository.findByToken(refreshToken)
+        return refreshTokenRepository.findByTokenHash(hashToken(refreshToken))
                 .switchIfEmpty(Mono.error(new RuntimeException("Invalid refresh token")))
                 .flatMap(rt -> {
                     if (rt.getExpiresAt() < System.currentTimeMillis()) {
@@ -96,6 +120,23 @@ public class AuthService {
     }
 
     public Mono<Void> logout(String refreshToken) {
-        return refreshTokenRepository.deleteByToken(refreshToken);
+        return refreshTokenRepository.deleteByTokenHash(hashToken(refreshToken));
+    }
+
+    private static ResponseStatusException tooManyAttempts() {
+        return new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Too many attempts, try again later");
+    }
+
+    private static ResponseStatusException serverBusy() {
+        return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Server is busy, try again later");
+    }
+
+    private static String hashToken(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 }
@@ -0,0 +1,118 @@
+package com.example.sandbox_backend.services;
+
+import com.example.sandbox_backend.dto.RunResult;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs one command in a sandbox on plain pipes: feeds stdin, collects stdout and stderr up to
+ * a limit each and kills the process when it runs past its time limit or output limit.
+ * The result carries no CPU time, that is up to the caller.
+ */
+@Component
+public class BatchProcessRunner {
+
+    private final Scheduler ptyScheduler;
+
+    public BatchProcessRunner(@Qualifier("ptyScheduler") Scheduler ptyScheduler) {
+        this.ptyScheduler = ptyScheduler;
+    }
+
+    public Mono<RunResult> run(ExecutionBackend backend, String sandboxId, String command, String stdin,
+                               Duration timeLimit, long outputLimitBytes) {
+        return run(() -> backend.startBatchProcess(sandboxId, command), stdin, timeLimit, outputLimitBytes);
+    }
+
+    /**
+     * Runs the compile step of {@code language}, as the user the backend compiles as.
+     */
+    public Mono<RunResult> compile(ExecutionBackend backend, String sandboxId, String language, String command,
+                                   Duration timeLimit, long outputLimitBytes) {
+        return run(() -> backend.startCompileProcess(sandboxId, language, command), null, timeLimit, outputLimitBytes);
+    }
+
+    private Mono<RunResult> run(Callable<Process> start, String stdin, Duration timeLimit, long outputLimitBytes) {
+        return Mono.fromCallable(start)
+                .subscribeOn(ptyScheduler)
+                .flatMap(process -> {
+                    long start = System.nanoTime();
+                    AtomicLong wallNanos = new AtomicLong();
+                    AtomicBoolean timedOut = new AtomicBoolean();
+                    AtomicBoolean truncated = new AtomicBoolean();
+                    Disposable deadline = Mono.delay(timeLimit).subscribe(tick -> {
+                        timedOut.set(true);
+                        process.destroyForcibly();
+                    });
+
+                    Mono<byte[]> stdout = capture(process, process.getInputStream(), outputLimitBytes, truncated);
+                    Mono<byte[]> stderr = capture(process, process.getErrorStream(), outputLimitBytes, truncated);
+                    Mono<Integer> exit = Mono.fromRunnable(() -> writeStdin(process, stdin))
+                            .subscribeOn(ptyScheduler)
+                            .then(Mono.fromCallable(() -> {
+                                int exitCode = process.waitFor();
+                                wallNanos.set(System.nanoTime() - start);
+                                return exitCode;
+                            }).subscribeOn(ptyScheduler));
+
+                    return Mono.zip(stdout, stderr, exit)
+                            .map(t -> new RunResult(
+                                    new String(t.getT1(), StandardCharsets.UTF_8),
+                                    new String(t.getT2(), StandardCharsets.UTF_8),
+                                    t.getT3(),
+                                    Duration.ofNanos(wallNanos.get()).toMillis(),
+                                    null,
+                                    timedOut.get(),
+                                    truncated.get()))
+                            .doFinally(signalType -> {
+                                deadline.dispose();
+                                process.destroyForcibly();
+                            });
+                });
+    }
+
+    // Reads a stream to the end; past the limit the process is killed and the rest dropped
+    private Mono<byte[]> capture(Process process, InputStream input, long limit, AtomicBoolean truncated) {
+        return Mono.fromCallable(() -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            try (input) {
+                int n;
+                while ((n = input.read(buffer)) != -1) {
+                    int allowed = (int) Math.min(n, limit - out.size());
+                    out.write(buffer, 0, allowed);
+                    if (allowed < n) {
+                        truncated.set(true);
+                        process.destroyForcibly();
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                // the stream is closed when the process is killed
+            }
+            return out.toByteArray();
+        }).subscribeOn(ptyScheduler);
+    }
+
+    private static void writeStdin(Process process, String stdin) {
+        try (OutputStream out = process.getOutputStream()) {
+            if (stdin != null) {
+                out.write(stdin.getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            // the program exited without reading all of its input
+        }
+    }
+}
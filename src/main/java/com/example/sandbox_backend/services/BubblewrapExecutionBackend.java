@@ -0,0 +1,254 @@
+package com.example.sandbox_backend.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runs directly on the host in fresh Linux namespaces via bubblewrap: a read-only bind of a
+ * pre-extracted rootfs per language ({@code <rootfs-dir>/<language>}, e.g. from
+ * {@code docker export}), a private writable workdir, no network. CPU time, file size and
+ * processes are capped with rlimits; memory and process count with a cgroup v2 child of
+ * {@code sandbox.bwrap.cgroup-dir} (delegated to the backend user). Without a cgroup dir the
+ * backend reports itself unavailable rather than run code without memory limits.
+ * Acquiring a sandbox is a mkdir, so there is nothing to pool.
+ */
+@Service
+public class BubblewrapExecutionBackend implements ExecutionBackend {
+
+    public static final String NAME = "bwrap";
+    private static final Logger log = LoggerFactory.getLogger(BubblewrapExecutionBackend.class);
+    private static final String PATH = "/usr/local/sbin:/usr/local/bin:/usr/sbin:/usr/bin:/sbin:/bin";
+
+    // Same limits as the Docker sandboxes
+    private static final long MEMORY_BYTES = 256L * 1024 * 1024;
+    private static final int PIDS_LIMIT = 100;
+    private static final int CPU_SECONDS = 15;
+    private static final long FILE_SIZE_BYTES = 5_000_000L;
+    private static final int OPEN_FILES = 256;
+
+    private final ExecMetrics execMetrics;
+    private final String bwrapPath;
+    private final Path rootfsDir;
+    private final Path workRoot;
+    private final Path cgroupDir;
+    private final int maxUserProcesses;
+    private final Map<String, Sandbox> sandboxes = new ConcurrentHashMap<>();
+    private volatile boolean available;
+
+    private record Sandbox(String language, Path workDir, Path cgroup) {
+    }
+
+    public BubblewrapExecutionBackend(ExecMetrics execMetrics,
+                                      @Value("${sandbox.bwrap.path:bwrap}") String bwrapPath,
+                                      @Value("${sandbox.bwrap.rootfs-dir:/var/lib/sandbox/rootfs}") String rootfsDir,
+                                      @Value("${sandbox.bwrap.work-dir:${java.io.tmpdir}/sandbox-work}") String workDir,
+                                      @Value("${sandbox.bwrap.cgroup-dir:}") String cgroupDir,
+                                      @Value("${sandbox.bwrap.max-user-processes:1024}") int maxUserProcesses) {
+        this.execMetrics = execMetrics;
+        this.bwrapPath = bwrapPath;
+        this.rootfsDir = Path.of(rootfsDir);
+        this.workRoot = Path.of(workDir);
+        this.cgroupDir = cgroupDir.isBlank() ? null : Path.of(cgroupDir);
+        this.maxUserProcesses = maxUserProcesses;
+    }
+
+    @PostConstruct
+    void init() {
+        if (!isExecutable(bwrapPath) || !Files.isDirectory(rootfsDir)) {
+            log.info("bwrap backend unavailable (bwrap: {}, rootfs dir: {})", bwrapPath, rootfsDir);
+        } else if (cgroupDir == null || !Files.isDirectory(cgroupDir)) {
+            log.error("bwrap backend unavailable: sandbox.bwrap.cgroup-dir '{}' is not a directory, "
+                    + "sandboxes would run without memory and pids limits", cgroupDir);
+        } else {
+            available = true;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public Mono<Boolean> isAvailable() {
+        return Mono.just(available);
+    }
+
+    @Override
+    public Mono<String> acquire(String language, String sessionId) {
+        return execMetrics.time(Mono.fromCallable(() -> create(language)), ExecMetrics.CREATE, execMetrics.languageTag(language))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private String create(String language) throws IOException {
+        if (!Files.isDirectory(rootfsDir.resolve(language))) {
+            throw new IllegalStateException("No rootfs for " + language + " in " + rootfsDir);
+        }
+        String id = UUID.randomUUID().toString();
+        Path workDir = Files.createDirectories(workRoot.resolve(id));
+        Path cgroup = null;
+        if (cgroupDir != null) {
+            cgroup = Files.createDirectory(cgroupDir.resolve(id));
+            Files.writeString(cgroup.resolve("memory.max"), Long.toString(MEMORY_BYTES));
+            Files.writeString(cgroup.resolve("pids.max"), Integer.toString(PIDS_LIMIT));
+        }
+        sandboxes.put(id, new Sandbox(language, workDir, cgroup));
+        return id;
+    }
+
+    @Override
+    public Mono<Void> saveFile(String sandboxId, String fileName, String content) {
+        return Mono.fromCallable(() -> Files.writeString(sandbox(sandboxId).workDir().resolve(fileName),
+                        content, StandardCharsets.UTF_8))
+                .subscribeOn(Schedulers.boundedElastic())
+                .then();
+    }
+
+    @Override
+    public List<String> commandLine(String sandboxId, String command, boolean tty) {
+        Sandbox sandbox = sandbox(sandboxId);
+        List<String> cmd = new ArrayList<>();
+        if (sandbox.cgroup() != null) {
+            // join the cgroup before exec'ing, so bwrap and everything it starts are accounted to it
+            cmd.addAll(List.of("sh", "-c", "echo $$ > \"$0\" && exec \"$@\"",
+                    sandbox.cgroup().resolve("cgroup.procs").toString()));
+        }
+        // RLIMIT_NPROC counts every process of the backend user, the per-sandbox cap is pids.max
+        cmd.addAll(List.of("prlimit",
+                "--cpu=" + CPU_SECONDS, "--fsize=" + FILE_SIZE_BYTES, "--nofile=" + OPEN_FILES,
+                "--nproc=" + maxUserProcesses, "--"));
+        cmd.addAll(List.of(bwrapPath, "--unshare-all", "--die-with-parent"));
+        if (!tty) {
+            // without a PTY of its own the program would share our session and could inject input into it (TIOCSTI)
+            cmd.add("--new-session");
+        }
+        cmd.addAll(List.of(
+                "--ro-bind", rootfsDir.resolve(sandbox.language()).toString(), "/",
+                "--dev", "/dev",
+                "--proc", "/proc",
+                "--tmpfs", "/tmp",
+                "--bind", sandbox.workDir().toString(), WORKDIR,
+                "--chdir", WORKDIR,
+                "--uid", Integer.toString(SANDBOX_UID),
+                "--gid", Integer.toString(SANDBOX_UID),
+                "--hostname", "sandbox",
+                "--clearenv",
+                "--setenv", "PATH", PATH,
+                "--setenv", "HOME", WORKDIR,
+                "--setenv", "TERM", "xterm",
+                "sh", "-c", command));
+        return cmd;
+    }
+
+    @Override
+    public long memoryLimit() {
+        return MEMORY_BYTES;
+    }
+
+    /**
+     * CPU time accounted to the run's cgroup; empty without sandbox.bwrap.cgroup-dir.
+     */
+    @Override
+    public Mono<Duration> cpuTime(String sandboxId) {
+        Sandbox sandbox = sandboxes.get(sandboxId);
+        if (sandbox == null || sandbox.cgroup() == null) {
+            return Mono.empty();
+        }
+        return Mono.fromCallable(() -> {
+                    for (String line : Files.readAllLines(sandbox.cgroup().resolve("cpu.stat"))) {
+                        if (line.startsWith("usage_usec ")) {
+                            return Duration.ofNanos(Long.parseLong(line.substring(11).trim()) * 1000);
+                        }
+                    }
+                    return null;
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(e -> Mono.empty());
+    }
+
+    @Override
+    public void release(String sandboxId) {
+        Sandbox sandbox = sandboxes.remove(sandboxId);
+        if (sandbox == null) {
+            return;
+        }
+        Mono.fromRunnable(() -> delete(sandbox))
+                .subscribeOn(Schedulers.boundedElastic())
+                // the cgroup can only be removed once its last process has exited
+                .retryWhen(Retry.fixedDelay(5, Duration.ofMillis(200)))
+                .subscribe(
+                        v -> { },
+                        e -> log.warn("Could not clean up bwrap sandbox {}: {}", sandboxId, e.getMessage())
+                );
+    }
+
+    private static void delete(Sandbox sandbox) {
+        try {
+            // stragglers (e.g. background children) are killed with the cgroup
+            if (sandbox.cgroup() != null && Files.exists(sandbox.cgroup().resolve("cgroup.kill"))) {
+                Files.writeString(sandbox.cgroup().resolve("cgroup.kill"), "1");
+            }
+            FileSystemUtils.deleteRecursively(sandbox.workDir());
+            if (sandbox.cgroup() != null) {
+                Files.deleteIfExists(sandbox.cgroup());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        sandboxes.values().forEach(sandbox -> {
+            try {
+                delete(sandbox);
+            } catch (RuntimeException e) {
+                log.warn("Could not clean up bwrap sandbox {}: {}", sandbox.workDir(), e.getMessage());
+            }
+        });
+        sandboxes.clear();
+    }
+
+    private Sandbox sandbox(String sandboxId) {
+        Sandbox sandbox = sandboxes.get(sandboxId);
+        if (sandbox == null) {
+            throw new IllegalStateException("Unknown sandbox " + sandboxId);
+        }
+        return sandbox;
+    }
+
+    private static boolean isExecutable(String command) {
+        if (command.contains("/")) {
+            return Files.isExecutable(Path.of(command));
+        }
+        String path = System.getenv("PATH");
+        if (path == null) {
+            return false;
+        }
+        for (String dir : path.split(":")) {
+            if (!dir.isEmpty() && Files.isExecutable(Path.of(dir, command))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
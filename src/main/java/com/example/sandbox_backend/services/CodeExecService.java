@@ -2,107 +2,291 @@ package com.example.sandbox_backend.services;
 
 import com.example.sandbox_backend.dto.CompilerRequest;
 import com.example.sandbox_backend.mappings.Language;
+import com.example.sandbox_backend.util.Utf8StreamDecoder;
+import com.example.sandbox_backend.websocket.PtyOutputFramer;
+import com.example.sandbox_backend.websocket.PtyOutputReader;
 import com.pty4j.PtyProcess;
-import com.pty4j.PtyProcessBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.socket.WebSocketMessage;
 import org.springframework.web.reactive.socket.WebSocketSession;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
+import reactor.core.scheduler.Scheduler;
 
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
-import java.util.regex.Pattern;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public class CodeExecService {
 
     private static final Logger log = LoggerFactory.getLogger(CodeExecService.class.getName());
+    private static final String WORKDIR = ExecutionBackend.WORKDIR;
     private final Language language;
+    private final Map<String, ExecutionBackend> backends;
+    private final ExecutionBackendSelector backendSelector;
+    private final DockerClient dockerClient;
+    private final ArtifactCacheService artifactCache;
+    private final CompilerCache compilerCache;
+    private final MeterRegistry meterRegistry;
+    private final ExecMetrics execMetrics;
+    private final Scheduler ptyScheduler;
+    private final int maxFrameBytes;
+    private final Duration flushInterval;
+    private final boolean binaryFrames;
+    private final long maxOutputBytes;
 
-    public CodeExecService(Language language) {
+    public CodeExecService(Language language,
+                           List<ExecutionBackend> backends,
+                           ExecutionBackendSelector backendSelector,
+                           DockerClient dockerClient,
+                           ArtifactCacheService artifactCache,
+                           CompilerCache compilerCache,
+                           MeterRegistry meterRegistry,
+                           ExecMetrics execMetrics,
+                           @Qualifier("ptyScheduler") Scheduler ptyScheduler,
+                           @Value("${sandbox.exec.output.max-frame-bytes:16384}") int maxFrameBytes,
+                           @Value("${sandbox.exec.output.flush-interval-ms:10}") long flushIntervalMs,
+                           @Value("${sandbox.exec.output.binary-frames:false}") boolean binaryFrames,
+                           @Value("${sandbox.exec.output.max-bytes:4194304}") long maxOutputBytes) {
         this.language = language;
+        this.backends = backends.stream()
+                .collect(Collectors.toUnmodifiableMap(ExecutionBackend::getName, Function.identity()));
+        this.backendSelector = backendSelector;
+        this.dockerClient = dockerClient;
+        this.artifactCache = artifactCache;
+        this.compilerCache = compilerCache;
+        this.meterRegistry = meterRegistry;
+        this.execMetrics = execMetrics;
+        this.ptyScheduler = ptyScheduler;
+        this.maxFrameBytes = maxFrameBytes;
+        this.flushInterval = Duration.ofMillis(flushIntervalMs);
+        this.binaryFrames = binaryFrames;
+        this.maxOutputBytes = maxOutputBytes;
+        for (String lang : language.getLanguageMap().keySet()) {
+            String name = backendSelector.backendFor(lang);
+            if (!this.backends.containsKey(name)) {
+                throw new IllegalStateException("Unknown sandbox backend '" + name + "' for " + lang
+                        + ", expected one of " + this.backends.keySet());
+            }
+        }
     }
 
     public Flux<WebSocketMessage> startExec(WebSocketSession session, CompilerRequest compilerRequestDTO) {
-        return Mono.fromCallable(this::isDockerAvailable)
-                .flatMapMany(dockerAvailable -> {
-                    if (!dockerAvailable) {
-                        log.error("Docker is not available or try running with sudo(linux)");
-                        return Flux.error(new RuntimeException("Docker not available"));
-                    }
-                    return executeInDocker(session, compilerRequestDTO);
-                })
-                .onErrorResume(e -> {
-                    log.error("Error in startExec", e);
-                    return Flux.just(session.textMessage("Error: " + e.getMessage()));
-                });
+        return startExec(session, compilerRequestDTO, process -> session.getAttributes().put("ptyProcess", process));
     }
 
-    private Flux<WebSocketMessage> executeInDocker(WebSocketSession session, CompilerRequest compilerRequestDTO) {
-        return Mono.fromCallable(() -> getContainerId(compilerRequestDTO))
-                .flatMap(containerId ->
-                        Mono.fromCallable(() -> {
-                            saveFileToContainer(compilerRequestDTO, containerId);
-                            return containerId;
-                        })
-                )
-                .flatMapMany(containerId ->
-                        executePtyProcess(session, compilerRequestDTO, containerId)
-                                .doFinally(signalType ->
-                                        Mono.fromRunnable(() -> {
-                                            if (!destroyContainer(containerId)) {
-                                                log.error("Container with id {} could not be destroyed.", containerId);
-                                            }
-                                        }).subscribeOn(Schedulers.boundedElastic()).subscribe()
-                                )
+    /**
+     * Like {@link #startExec(WebSocketSession, CompilerRequest)}, but hands the PTY process of the
+     * run to {@code onProcess} instead of keeping it in the session attributes.
+     */
+    public Flux<WebSocketMessage> startExec(WebSocketSession session, CompilerRequest compilerRequestDTO,
+                                            Consumer<PtyProcess> onProcess) {
+        String lang = execMetrics.languageTag(compilerRequestDTO.language());
+        return Flux.defer(() -> {
+            execMetrics.sessionStarted();
+            Timer.Sample total = execMetrics.start();
+            return Mono.fromCallable(() -> backendFor(compilerRequestDTO.language()))
+                    .flatMapMany(backend -> backend.isAvailable()
+                            .flatMapMany(available -> {
+                                if (!available) {
+                                    return Flux.error(new RuntimeException("Sandbox backend " + backend.getName() + " not available"));
+                                }
+                                return execute(session, compilerRequestDTO, backend, onProcess);
+                            }))
+                    .onErrorResume(e -> {
+                        log.error("Error in startExec", e);
+                        return Flux.just(session.textMessage("Error: " + e.getMessage()));
+                    })
+                    .doFinally(signalType -> {
+                        execMetrics.sessionEnded();
+                        execMetrics.stop(total, ExecMetrics.TOTAL, lang);
+                    });
+        });
+    }
+
+    /**
+     * Backend configured for {@code requested}; throws IllegalArgumentException for unsupported languages.
+     */
+    public ExecutionBackend backendFor(String requested) {
+        String lang = requested == null ? "" : requested.trim();
+        if (!language.isLanguageValid(lang)) {
+            throw new IllegalArgumentException("Unsupported language: " + requested);
+        }
+        return backends.get(backendSelector.backendFor(lang));
+    }
+
+    private Flux<WebSocketMessage> execute(WebSocketSession session, CompilerRequest compilerRequestDTO,
+                                           ExecutionBackend backend, Consumer<PtyProcess> onProcess) {
+        String lang = compilerRequestDTO.language().trim();
+        return backend.acquire(lang, session.getId())
+                .flatMap(sandboxId ->
+                        saveFile(compilerRequestDTO, backend, sandboxId)
+                                .thenReturn(sandboxId)
+                                .doOnError(e -> backend.release(sandboxId))
                 )
-                .subscribeOn(Schedulers.boundedElastic());
+                .flatMapMany(sandboxId ->
+                        runInSandbox(session, compilerRequestDTO, backend, sandboxId, onProcess)
+                                .doFinally(signalType -> backend.release(sandboxId))
+                );
     }
 
+    private Flux<WebSocketMessage> runInSandbox(WebSocketSession session,
+                                                CompilerRequest compilerRequestDTO,
+                                                ExecutionBackend backend,
+                                                String sandboxId,
+                                                Consumer<PtyProcess> onProcess) {
+        String lang = compilerRequestDTO.language().trim();
+        // The separate compile step and the artifact cache work through the Docker exec/archive APIs.
+        // Compiling separately is needed for the artifact cache, and for the compiler cache so the
+        // compiler can run as the cache's owner.
+        if (!language.isCompiled(lang) || !backend.isDockerContainer()
+                || !artifactCache.isEnabled() && !compilerCache.isEnabled(lang)) {
+            return executePtyProcess(session, lang, language.getExecCommand().get(lang), backend, sandboxId, onProcess);
+        }
+        if (!artifactCache.isEnabled()) {
+            return compileAndRun(session, lang, backend, sandboxId, null, onProcess);
+        }
+
+        return artifactCache.cacheKey(lang, compilerRequestDTO.sourceCode())
+                .flatMapMany(cacheKey -> artifactCache.get(lang, cacheKey)
+                        .map(Optional::of)
+                        .defaultIfEmpty(Optional.empty())
+                        .flatMapMany(cached -> cached
+                                // Cache hit: drop the artifact into the workdir and only run it
+                                .map(tar -> execMetrics.time(dockerClient.putArchive(sandboxId, WORKDIR, tar), ExecMetrics.RESTORE, execMetrics.languageTag(lang))
+                                        .thenMany(executePtyProcess(session, lang, language.getRunCommand().get(lang), backend, sandboxId, onProcess)))
+                                .orElseGet(() -> compileAndRun(session, lang, backend, sandboxId, cacheKey, onProcess))));
+    }
+
+    // Compiles as the compiler cache's user, stores the artifact unless cacheKey is null, then runs under a PTY
+    private Flux<WebSocketMessage> compileAndRun(WebSocketSession session, String lang, ExecutionBackend backend,
+                                                 String containerId, String cacheKey, Consumer<PtyProcess> onProcess) {
+        String compileCommand = compilerCache.compileCommand(lang, language.getCompileCommand().get(lang));
+        String languageTag = execMetrics.languageTag(lang);
+        Counter outputBytes = execMetrics.outputBytes(languageTag);
+        return Flux.defer(() -> {
+            Utf8StreamDecoder decoder = new Utf8StreamDecoder();
+            Timer.Sample compile = execMetrics.start();
+            return dockerClient.execCreate(containerId, List.of("sh", "-c", compileCommand), compilerCache.compileUser(lang))
+                    .flatMapMany(execId -> dockerClient.execStart(execId)
+                            .doOnNext(frame -> outputBytes.increment(frame.payload().length))
+                            // Compiler output is not written to a tty, so translate newlines for the terminal
+                            .map(frame -> decoder.decode(frame.payload()).replace("\n", "\r\n"))
+                            .filter(text -> !text.isEmpty())
+                            .map(session::textMessage)
+                            .concatWith(dockerClient.execExitCode(execId)
+                                    .doOnNext(exitCode -> execMetrics.stop(compile, ExecMetrics.COMPILE, languageTag))
+                                    .flatMapMany(exitCode -> {
+                                        if (exitCode != 0) {
+                                            return Flux.just(session.textMessage("\n ----- Exited with status " + exitCode + " -----"));
+                                        }
+                                        return (cacheKey == null ? Mono.<Void>empty() : storeArtifact(lang, containerId, cacheKey))
+                                                .thenMany(executePtyProcess(session, lang, language.getRunCommand().get(lang), backend, containerId, onProcess));
+                                    })));
+        });
+    }
+
+    private Mono<Void> storeArtifact(String lang, String containerId, String cacheKey) {
+        return dockerClient.getArchive(containerId, WORKDIR + "/" + language.getArtifactPath().get(lang))
+                .flatMap(tar -> artifactCache.put(lang, cacheKey, tar))
+                .onErrorResume(e -> {
+                    log.warn("Could not cache compiled artifact for {}: {}", lang, e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Runs the command under a PTY. The run phase covers process start to exit, first_output the
+     * time to the first byte and exit the wait for the exit status after output has ended.
+     */
     private Flux<WebSocketMessage> executePtyProcess(WebSocketSession session,
-                                                     CompilerRequest compilerRequestDTO,
-                                                     String containerId) {
-        return Flux.create(sink -> {
-            try {
-                String command = language.getExecCommand().get(compilerRequestDTO.language().trim());
-                String[] cmd = {
-                        "sudo", "docker", "exec", "-it", containerId,
-                        "sh", "-c", command
-                };
-
-                PtyProcess process = new PtyProcessBuilder(cmd).start();
-                session.getAttributes().put("ptyProcess", process);
-                session.getAttributes().put("containerId", containerId);
-
-                InputStream input = process.getInputStream();
-                byte[] buffer = new byte[1024];
-                int len;
-
-                while ((len = input.read(buffer)) != -1) {
-                    String output = new String(buffer, 0, len);
-                    sink.next(session.textMessage(output));
-                }
+                                                     String lang,
+                                                     String command,
+                                                     ExecutionBackend backend,
+                                                     String sandboxId,
+                                                     Consumer<PtyProcess> onProcess) {
+        PtyOutputFramer framer = new PtyOutputFramer(session.bufferFactory(), maxFrameBytes, binaryFrames);
+        String languageTag = execMetrics.languageTag(lang);
+        Counter outputBytes = execMetrics.outputBytes(languageTag);
+        return Mono.fromCallable(() -> {
+                    PtyProcess process = backend.startProcess(sandboxId, command);
+                    onProcess.accept(process);
+                    return process;
+                })
+                .subscribeOn(ptyScheduler)
+                .flatMapMany(process -> {
+                    Timer.Sample run = execMetrics.start();
+                    AtomicBoolean firstOutput = new AtomicBoolean();
+                    PtyOutputReader reader = new PtyOutputReader(process, session.bufferFactory(), maxOutputBytes, meterRegistry);
+                    Flux<DataBuffer> output = reader.read(ptyScheduler)
+                            .doOnNext(buffer -> {
+                                if (firstOutput.compareAndSet(false, true)) {
+                                    execMetrics.stop(run, ExecMetrics.FIRST_OUTPUT, languageTag);
+                                }
+                                outputBytes.increment(buffer.readableByteCount());
+                            });
+                    return framer.frame(output, flushInterval)
+                            .concatWith(Mono.fromCallable(() -> truncationNotice(session, reader)))
+                            .concatWith(execMetrics.time(Mono.fromCallable(process::waitFor).subscribeOn(ptyScheduler),
+                                            ExecMetrics.EXIT, languageTag)
+                                    .doOnNext(exitCode -> execMetrics.stop(run, ExecMetrics.RUN, languageTag))
+                                    .map(exitCode -> session.textMessage("\n ----- Exited with status " + exitCode + " -----")));
+                });
+    }
 
-                int exitCode = process.waitFor();
-                sink.next(session.textMessage("\n ----- Exited with status " + exitCode + " -----"));
-                sink.complete();
+    private WebSocketMessage truncationNotice(WebSocketSession session, PtyOutputReader reader) {
+        if (!reader.isTruncated()) {
+            return null;
+        }
+        Counter.builder("sandbox.exec.output.truncated").register(meterRegistry).increment();
+        return session.textMessage("\r\n ----- Output exceeded " + reader.getMaxBytes() + " bytes, process killed -----");
+    }
 
+    /**
+     * Kills the PTY process of the run started from {@code session}, if it is still alive.
+     */
+    public void destroyProcess(WebSocketSession session) {
+        destroyProcess((PtyProcess) session.getAttributes().remove("ptyProcess"));
+    }
+
+    public void destroyProcess(PtyProcess proc) {
+        if (proc != null && proc.isAlive()) {
+            try {
+                proc.getInputStream().close();
+                proc.getOutputStream().close();
+                proc.destroy();
             } catch (Exception e) {
-                log.error("Error while reading process output", e);
-                sink.error(e);
+                log.warn("Failed to destroy PTY process", e);
             }
-        });
+        }
     }
 
     public Mono<Void> handleExec(WebSocketSession session, String data) {
+        return handleExec((PtyProcess) session.getAttributes().get("ptyProcess"), data);
+    }
+
+    /**
+     * Writes {@code data} to the PTY of {@code process}; a no-op before the process has started.
+     */
+    public Mono<Void> handleExec(PtyProcess process, String data) {
         return Mono.fromRunnable(() -> {
             try {
-                PtyProcess process = (PtyProcess) session.getAttributes().get("ptyProcess");
                 if (process != null) {
                     OutputStream output = process.getOutputStream();
                     output.write(data.getBytes(StandardCharsets.UTF_8));
@@ -111,80 +295,17 @@ public class CodeExecService {
             } catch (Exception e) {
                 log.error("handleExec: " + e.getMessage());
             }
-        }).subscribeOn(Schedulers.boundedElastic()).then();
-    }
-
-    public String getContainerId(CompilerRequest compilerRequestDTO) throws Exception {
-        String languageTrimmed = compilerRequestDTO.language().trim();
-        ProcessBuilder processBuilder = new ProcessBuilder(
-                "sudo", "docker", "run",
-                "--rm", "-d",
-                "--user", "1002",
-                "--memory", "256m",
-                "--pids-limit", "100",
-                "--ulimit", "cpu=15",
-                "--ulimit", "nproc=100",
-                "--ulimit", "fsize=5000000",
-                "--security-opt", "no-new-privileges:true",
-                languageTrimmed + "-image"
-        );
-        Process process = processBuilder.start();
-        String containerId = new String(process.getInputStream().readAllBytes()).trim();
-        int exitCode = process.waitFor();
-
-        if (!(exitCode == 0) || !isValidContainerId(containerId)) {
-            throw new RuntimeException("Error spinning up the container");
-        }
-        return containerId;
-    }
-
-    public void saveFileToContainer(CompilerRequest compilerRequestDTO, String containerId) throws Exception {
-        String extension = language.getLanguageMap().get(compilerRequestDTO.language());
-        String base64Code = compilerRequestDTO.getSourceCode2base64();
-        String command = String.format("echo '%s' | base64 -d > App%s", base64Code, extension);
-
-        String[] cmd = {
-                "sudo", "docker", "exec", "-i", containerId,
-                "sh", "-c", "stty -echo; " + command
-        };
-
-        ProcessBuilder processBuilder = new ProcessBuilder(cmd);
-        Process process = processBuilder.start();
-        int exitCode = process.waitFor();
-
-        if (exitCode != 0) {
-            throw new RuntimeException("Error saving file to container");
-        }
+        }).subscribeOn(ptyScheduler).then();
     }
 
-    private static boolean isValidContainerId(String containerId) {
-        String regex = "^[0-9a-f]{64}$";
-        return Pattern.matches(regex, containerId);
-    }
-
-    public boolean isDockerAvailable() {
-        try {
-            ProcessBuilder pb = new ProcessBuilder("docker", "info");
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-            int exitCode = process.waitFor();
-            return exitCode == 0;
-        } catch (Exception e) {
-            log.error("Docker availability check failed", e);
-            return false;
-        }
-    }
-
-    public boolean destroyContainer(String containerId) {
-        try {
-            ProcessBuilder pb = new ProcessBuilder("sudo", "docker", "rm", "-f", containerId);
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-            int exitCode = process.waitFor();
-            return exitCode == 0;
-        } catch (Exception e) {
-            log.error("Error destroying the container", e);
-            return false;
-        }
+    /**
+     * Writes the source into the sandbox workdir as App plus the language's file extension.
+     */
+    private Mono<Void> saveFile(CompilerRequest compilerRequestDTO, ExecutionBackend backend, String sandboxId) {
+        String lang = compilerRequestDTO.language().trim();
+        String fileName = "App" + language.getLanguageMap().get(lang);
+        return execMetrics.time(backend.saveFile(sandboxId, fileName, compilerRequestDTO.sourceCode()),
+                        ExecMetrics.SAVE, execMetrics.languageTag(lang))
+                .onErrorMap(e -> new RuntimeException("Error saving file to container", e));
     }
-}
\ No newline at end of file
+}
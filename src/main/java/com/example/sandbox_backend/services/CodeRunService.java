@@ -0,0 +1,330 @@
+package com.example.sandbox_backend.services;
+
+import com.example.sandbox_backend.dto.RunRequest;
+import com.example.sandbox_backend.dto.RunResult;
+import com.example.sandbox_backend.dto.RunStatusResponse;
+import com.example.sandbox_backend.mappings.Language;
+import com.example.sandbox_backend.util.RequestUtil;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non-interactive runs: the source runs once with the given stdin on plain pipes, and stdout,
+ * stderr, exit code and timings come back as one result. Compiled languages are compiled first
+ * under {@code code.run.compile-time-ms}; the requested limits and the reported timings cover the
+ * run of the program only, and a failed compile is returned as the result with the compiler's
+ * output and exit status. Runs go through the same admission control as /code/exec.
+ * Asynchronous runs are queued per user, started as the user's admission slots allow, and kept
+ * for polling for {@code code.run.result-ttl-seconds} once finished. One that admission control
+ * keeps turning away for {@code code.run.max-admission-wait-ms} fails with the rejection.
+ */
+@Service
+public class CodeRunService {
+
+    private static final Logger log = LoggerFactory.getLogger(CodeRunService.class);
+
+    public static final String QUEUED = "queued";
+    public static final String RUNNING = "running";
+    public static final String DONE = "done";
+    public static final String FAILED = "failed";
+
+    // Back-off before an async run that was turned away by admission control is tried again
+    private static final Duration RETRY_DELAY = Duration.ofMillis(500);
+    // The program is killed inside the sandbox this long after the runner gave up on it
+    private static final Duration KILL_GRACE = Duration.ofSeconds(2);
+
+    private final Language language;
+    private final CodeExecService codeExecService;
+    private final ExecAdmissionService admissionService;
+    private final ExecMetrics execMetrics;
+    private final BatchProcessRunner processRunner;
+    private final long defaultTimeMs;
+    private final long maxTimeMs;
+    private final long maxOutputBytes;
+    private final long maxStdinBytes;
+    private final int maxPendingPerUser;
+    private final Duration compileTime;
+    private final Duration maxAdmissionWait;
+    // finished runs; queued and running ones are in active, which is bounded by the per-user queue
+    private final Cache<String, AsyncRun> runs;
+    private final Map<String, AsyncRun> active = new ConcurrentHashMap<>();
+
+    // user key -> async runs not yet started, and how many are started; guarded by this
+    private final Map<String, Deque<AsyncRun>> pending = new HashMap<>();
+    private final Map<String, Integer> started = new HashMap<>();
+
+    private record Limits(Duration time, long outputBytes) {
+    }
+
+    private static final class AsyncRun {
+        final String id = UUID.randomUUID().toString();
+        final String userKey;
+        final String ip;
+        final RunRequest request;
+        final Limits limits;
+        volatile String status = QUEUED;
+        volatile RunResult result;
+        volatile String error;
+        // first time admission control turned the run away, null while it never did
+        volatile Instant firstRejected;
+
+        AsyncRun(String userKey, String ip, RunRequest request, Limits limits) {
+            this.userKey = userKey;
+            this.ip = ip;
+            this.request = request;
+            this.limits = limits;
+        }
+
+        RunStatusResponse toResponse() {
+            return new RunStatusResponse(id, status, result, error);
+        }
+    }
+
+    public CodeRunService(Language language,
+                          CodeExecService codeExecService,
+                          ExecAdmissionService admissionService,
+                          ExecMetrics execMetrics,
+                          BatchProcessRunner processRunner,
+                          @Value("${code.run.default-time-ms:10000}") long defaultTimeMs,
+                          @Value("${code.run.max-time-ms:30000}") long maxTimeMs,
+                          @Value("${code.run.max-output-bytes:1048576}") long maxOutputBytes,
+                          @Value("${code.run.max-stdin-bytes:1048576}") long maxStdinBytes,
+                          @Value("${code.run.max-pending-per-user:1000}") int maxPendingPerUser,
+                          @Value("${code.run.max-results:10000}") long maxResults,
+                          @Value("${code.run.result-ttl-seconds:600}") long resultTtlSeconds,
+                          @Value("${code.run.compile-time-ms:30000}") long compileTimeMs,
+                          @Value("${code.run.max-admission-wait-ms:60000}") long maxAdmissionWaitMs) {
+        this.language = language;
+        this.codeExecService = codeExecService;
+        this.admissionService = admissionService;
+        this.execMetrics = execMetrics;
+        this.processRunner = processRunner;
+        this.defaultTimeMs = Math.min(defaultTimeMs, maxTimeMs);
+        this.maxTimeMs = maxTimeMs;
+        this.maxOutputBytes = maxOutputBytes;
+        this.maxStdinBytes = maxStdinBytes;
+        this.maxPendingPerUser = maxPendingPerUser;
+        this.compileTime = Duration.ofMillis(compileTimeMs);
+        this.maxAdmissionWait = Duration.ofMillis(maxAdmissionWaitMs);
+        this.runs = CacheBuilder.newBuilder()
+                .maximumSize(maxResults)
+                .expireAfterWrite(resultTtlSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * Runs the request once admitted and returns its result. Admission rejections map to
+     * 429 (per-user/IP cap) or 503 (server busy), invalid requests to 400.
+     */
+    public Mono<RunResult> run(RunRequest request, String ip) {
+        return Mono.fromCallable(() -> limits(request))
+                .zipWith(RequestUtil.currentUserKey(ip))
+                .flatMap(t -> admissionService.run(t.getT2(), ip,
+                        () -> execute(UUID.randomUUID().toString(), t.getT1(), request)))
+                .onErrorMap(ExecAdmissionService.AdmissionRejectedException.class, e -> new ResponseStatusException(
+                        e.isServerBusy() ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.TOO_MANY_REQUESTS, e.getMessage()));
+    }
+
+    /**
+     * Queues the request and returns its run id right away; poll with {@link #status}.
+     */
+    public Mono<RunStatusResponse> submit(RunRequest request, String ip) {
+        return Mono.fromCallable(() -> limits(request))
+                .zipWith(RequestUtil.currentUserKey(ip))
+                .map(t -> {
+                    AsyncRun run = new AsyncRun(t.getT2(), ip, request, t.getT1());
+                    synchronized (this) {
+                        Deque<AsyncRun> queue = pending.computeIfAbsent(run.userKey, k -> new ArrayDeque<>());
+                        if (queue.size() >= maxPendingPerUser) {
+                            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Too many queued runs");
+                        }
+                        active.put(run.id, run);
+                        queue.addLast(run);
+                    }
+                    pump(run.userKey);
+                    return run.toResponse();
+                });
+    }
+
+    /**
+     * State of an async run; empty when it is unknown, expired or belongs to someone else.
+     */
+    public Mono<RunStatusResponse> status(String runId, String ip) {
+        return RequestUtil.currentUserKey(ip)
+                .flatMap(userKey -> Mono.justOrEmpty(Optional.ofNullable(active.get(runId))
+                                .orElseGet(() -> runs.getIfPresent(runId)))
+                        .filter(run -> run.userKey.equals(userKey)))
+                .map(AsyncRun::toResponse);
+    }
+
+    // Starts queued runs of the user while it has fewer started than its admission cap
+    private void pump(String userKey) {
+        List<AsyncRun> toStart = new ArrayList<>();
+        synchronized (this) {
+            Deque<AsyncRun> queue = pending.get(userKey);
+            int count = started.getOrDefault(userKey, 0);
+            while (queue != null && !queue.isEmpty() && count < admissionService.getMaxPerUser()) {
+                toStart.add(queue.pollFirst());
+                count++;
+            }
+            if (count > 0) {
+                started.put(userKey, count);
+            }
+            if (queue != null && queue.isEmpty()) {
+                pending.remove(userKey);
+            }
+        }
+        toStart.forEach(this::start);
+    }
+
+    private void start(AsyncRun run) {
+        admissionService.run(run.userKey, run.ip, () -> {
+                    run.status = RUNNING;
+                    return execute(run.id, run.limits, run.request);
+                })
+                .subscribe(
+                        result -> {
+                            run.result = result;
+                            run.status = DONE;
+                            finished(run);
+                        },
+                        e -> {
+                            if (e instanceof ExecAdmissionService.AdmissionRejectedException && mayRetry(run)) {
+                                // e.g. interactive sessions of the same user hold its slots
+                                requeue(run);
+                                return;
+                            }
+                            log.warn("Async run {} failed: {}", run.id, e.getMessage());
+                            run.error = e.getMessage();
+                            run.status = FAILED;
+                            finished(run);
+                        });
+    }
+
+    private boolean mayRetry(AsyncRun run) {
+        Instant now = Instant.now();
+        if (run.firstRejected == null) {
+            run.firstRejected = now;
+        }
+        return run.firstRejected.plus(maxAdmissionWait).isAfter(now);
+    }
+
+    private void requeue(AsyncRun run) {
+        synchronized (this) {
+            pending.computeIfAbsent(run.userKey, k -> new ArrayDeque<>()).addFirst(run);
+            decrementStarted(run.userKey);
+        }
+        Mono.delay(RETRY_DELAY).subscribe(tick -> pump(run.userKey));
+    }
+
+    // The result is kept from now on for the TTL; in the cache before it leaves active so polls never miss it
+    private void finished(AsyncRun run) {
+        runs.put(run.id, run);
+        active.remove(run.id);
+        synchronized (this) {
+            decrementStarted(run.userKey);
+        }
+        pump(run.userKey);
+    }
+
+    private void decrementStarted(String userKey) {
+        started.computeIfPresent(userKey, (k, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private Mono<RunResult> execute(String runId, Limits limits, RunRequest request) {
+        ExecutionBackend backend = codeExecService.backendFor(request.language());
+        String lang = request.language().trim();
+        String languageTag = execMetrics.languageTag(lang);
+        return backend.isAvailable()
+                .flatMap(available -> {
+                    if (!available) {
+                        return Mono.<RunResult>error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                                "Sandbox backend " + backend.getName() + " not available"));
+                    }
+                    execMetrics.sessionStarted();
+                    Timer.Sample total = execMetrics.start();
+                    return backend.acquire(lang, "run-" + runId)
+                            .flatMap(sandboxId -> execMetrics.time(
+                                            backend.saveFile(sandboxId, "App" + language.getLanguageMap().get(lang), request.sourceCode()),
+                                            ExecMetrics.SAVE, languageTag)
+                                    .then(compile(backend, sandboxId, lang, limits))
+                                    .flatMap(compileError -> compileError
+                                            .map(Mono::just)
+                                            .orElseGet(() -> runProgram(backend, sandboxId, lang, request, limits)))
+                                    .doFinally(signalType -> backend.release(sandboxId)))
+                            .doFinally(signalType -> {
+                                execMetrics.sessionEnded();
+                                execMetrics.stop(total, ExecMetrics.TOTAL, languageTag);
+                            });
+                });
+    }
+
+    // Empty when there is nothing to compile or compiling succeeded
+    private Mono<Optional<RunResult>> compile(ExecutionBackend backend, String sandboxId, String lang, Limits limits) {
+        if (!language.isCompiled(lang)) {
+            return Mono.just(Optional.empty());
+        }
+        return execMetrics.time(processRunner.compile(backend, sandboxId, lang, language.getCompileCommand().get(lang),
+                        compileTime, limits.outputBytes()), ExecMetrics.COMPILE, execMetrics.languageTag(lang))
+                .map(result -> result.exitCode() == 0 && !result.timedOut() ? Optional.<RunResult>empty() : Optional.of(result));
+    }
+
+    private Mono<RunResult> runProgram(ExecutionBackend backend, String sandboxId, String lang, RunRequest request,
+                                       Limits limits) {
+        boolean compiled = language.isCompiled(lang);
+        String run = compiled ? language.getRunCommand().get(lang) : language.getExecCommand().get(lang);
+        // killing the docker exec client on timeout leaves the program running in the container
+        String seconds = String.format(Locale.ROOT, "%.3f", limits.time().plus(KILL_GRACE).toMillis() / 1000.0);
+        String command = "exec timeout -s KILL " + seconds + " " + run;
+        // CPU time the sandbox used so far went into compiling
+        Mono<Duration> compileCpu = compiled ? backend.cpuTime(sandboxId) : Mono.empty();
+        return compileCpu.defaultIfEmpty(Duration.ZERO)
+                .flatMap(before -> execMetrics.time(processRunner.run(backend, sandboxId, command, request.stdin(),
+                                limits.time(), limits.outputBytes()), ExecMetrics.RUN, execMetrics.languageTag(lang))
+                        .flatMap(result -> backend.cpuTime(sandboxId)
+                                .map(cpu -> new RunResult(result.stdout(), result.stderr(), result.exitCode(),
+                                        result.wallTimeMs(), cpu.minus(before).toMillis(), result.timedOut(), result.outputTruncated()))
+                                .defaultIfEmpty(result)));
+    }
+
+    private Limits limits(RunRequest request) {
+        if (request.language() == null || !language.isLanguageValid(request.language().trim())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported language: " + request.language());
+        }
+        if (request.sourceCode() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "sourceCode is required");
+        }
+        if (request.stdin() != null && request.stdin().getBytes(StandardCharsets.UTF_8).length > maxStdinBytes) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "stdin exceeds " + maxStdinBytes + " bytes");
+        }
+        long timeMs = request.timeLimitMs() == null ? defaultTimeMs : request.timeLimitMs();
+        long outputBytes = request.outputLimitBytes() == null ? maxOutputBytes : request.outputLimitBytes();
+        if (timeMs <= 0 || outputBytes <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limits must be positive");
+        }
+        return new Limits(Duration.ofMillis(Math.min(timeMs, maxTimeMs)), Math.min(outputBytes, maxOutputBytes));
+    }
+}
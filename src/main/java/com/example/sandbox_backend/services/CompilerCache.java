@@ -0,0 +1,126 @@
+package com.example.sandbox_backend.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-language compiler cache shared by the Docker sandboxes of that language: ccache for
+ * gcc/g++, GOCACHE for go and rustc's incremental directory. Each language gets its own named
+ * volume on the Docker host's disk, mounted read-write at {@link #MOUNT_PATH}, so it outlives the
+ * containers and costs no sandbox memory. {@code sandbox.compiler-cache.size-bytes} is kept by
+ * the tools: ccache trims itself to CCACHE_MAXSIZE, go and rust caches past the size are dropped
+ * before the next compile.
+ * Programs of different users share the cache, so it is off by default. The volume is filled from
+ * the image's {@link #MOUNT_PATH}, which belongs to {@link #COMPILER_UID} with mode 0700: with the
+ * cache on, compiling runs as that user ("compiler", in the sandbox group, so it can write the build
+ * output into the group-writable home) and only the program runs as
+ * {@link ExecutionBackend#SANDBOX_UID}, so a program cannot poison the cache.
+ */
+@Component
+public class CompilerCache {
+
+    public static final String MOUNT_PATH = "/cache";
+    // "compiler" in the images of the cached languages, in the sandbox user's group
+    public static final int COMPILER_UID = 1003;
+    private static final String PATH = "/usr/local/sbin:/usr/local/bin:/usr/sbin:/usr/bin:/sbin:/bin";
+
+    // Cache directories without a size cap of their own
+    private static final Map<String, String> UNCAPPED_DIRS = Map.of(
+            "go", MOUNT_PATH + "/go",
+            "rust", MOUNT_PATH + "/rust");
+
+    // ccache does not cache a call that compiles and links, so with the cache on these do it in two
+    private static final Map<String, String> SPLIT_COMPILE = Map.of(
+            "c", "gcc -c App.c -o App.o && gcc App.o -o App",
+            "cpp", "g++ -c App.cpp -o App.o && g++ App.o -o App");
+
+    // Environment that points each toolchain at the cache volume
+    private static final Map<String, List<String>> ENV = Map.of(
+            "c", List.of("PATH=/usr/lib/ccache/bin:" + PATH, "CCACHE_DIR=" + MOUNT_PATH + "/ccache"),
+            "cpp", List.of("PATH=/usr/lib/ccache/bin:" + PATH, "CCACHE_DIR=" + MOUNT_PATH + "/ccache"),
+            "go", List.of("GOCACHE=" + MOUNT_PATH + "/go"),
+            "rust", List.of("RUSTC_CACHE_FLAGS=-C incremental=" + MOUNT_PATH + "/rust"));
+
+    private final boolean enabled;
+    private final long sizeBytes;
+    private final String volumePrefix;
+    private final ExecutionBackendSelector backendSelector;
+
+    public CompilerCache(ExecutionBackendSelector backendSelector,
+                         @Value("${sandbox.compiler-cache.enabled:false}") boolean enabled,
+                         @Value("${sandbox.compiler-cache.size-bytes:536870912}") long sizeBytes,
+                         @Value("${sandbox.compiler-cache.volume-prefix:sandbox-compiler-cache-}") String volumePrefix) {
+        this.backendSelector = backendSelector;
+        this.enabled = enabled;
+        this.sizeBytes = sizeBytes;
+        this.volumePrefix = volumePrefix;
+    }
+
+    /**
+     * Whether runs of {@code language} compile with the cache; only Docker sandboxes mount it.
+     */
+    public boolean isEnabled(String language) {
+        return enabled && ENV.containsKey(language)
+                && DockerExecutionBackend.NAME.equals(backendSelector.backendFor(language));
+    }
+
+    public List<String> env(String language) {
+        if (!isEnabled(language)) {
+            return List.of();
+        }
+        List<String> env = new ArrayList<>(ENV.get(language));
+        if (language.equals("c") || language.equals("cpp")) {
+            // ccache trims itself a little below the volume size
+            env.add("CCACHE_MAXSIZE=" + sizeBytes * 9 / 10);
+        }
+        return env;
+    }
+
+    /**
+     * The compile {@code command} of {@code language} adapted to the cache: split for ccache, or
+     * preceded by dropping the go or rust cache once it has outgrown the size.
+     */
+    public String compileCommand(String language, String command) {
+        if (!isEnabled(language)) {
+            return command;
+        }
+        if (SPLIT_COMPILE.containsKey(language)) {
+            return SPLIT_COMPILE.get(language);
+        }
+        String dir = UNCAPPED_DIRS.get(language);
+        if (dir == null) {
+            return command;
+        }
+        long maxKib = sizeBytes / 1024;
+        return "kib=$(du -sk " + dir + " 2>/dev/null | cut -f1); "
+                + "[ \"${kib:-0}\" -le " + maxKib + " ] || rm -rf " + dir + "; " + command;
+    }
+
+    /**
+     * User the compile step of {@code language} runs as, or null for the sandbox user when the
+     * cache is off.
+     */
+    public String compileUser(String language) {
+        return isEnabled(language) ? Integer.toString(COMPILER_UID) : null;
+    }
+
+    /**
+     * HostConfig mounts for a sandbox of {@code language}.
+     */
+    public List<Map<String, Object>> mounts(String language) {
+        if (!isEnabled(language)) {
+            return List.of();
+        }
+        return List.of(Map.of(
+                "Type", "volume",
+                "Source", volumePrefix + language,
+                "Target", MOUNT_PATH,
+                "ReadOnly", false,
+                "VolumeOptions", Map.of(
+                        "Labels", Map.of("sandbox.compiler-cache", language))));
+    }
+}
@@ -0,0 +1,255 @@
+package com.example.sandbox_backend.services;
+
+import com.example.sandbox_backend.mappings.Language;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps a small number of started sandbox containers per language so that a
+ * run can skip the {@code docker run} round trip. Containers are handed out
+ * once, refilled in the background and retired once they get older than
+ * {@code sandbox.pool.max-age-seconds}. The image entrypoint stops every container
+ * {@link #CONTAINER_LIFETIME} after it was created, so a run on a pooled container can rely on
+ * {@link #getSessionBudget()}: the lifetime minus the max age (180s with the defaults).
+ */
+@Service
+public class ContainerPoolService {
+
+    private static final Logger log = LoggerFactory.getLogger(ContainerPoolService.class);
+    public static final long SANDBOX_MEMORY_BYTES = 256L * 1024 * 1024;
+    // timeout in sandbox_dockerfiles/entrypoint.sh
+    public static final Duration CONTAINER_LIFETIME = Duration.ofSeconds(200);
+
+    private final Language language;
+    private final DockerClient dockerClient;
+    private final ContainerReaper reaper;
+    private final ExecutionBackendSelector backendSelector;
+    private final CompilerCache compilerCache;
+    private final MeterRegistry meterRegistry;
+    private final int poolSize;
+    private final Duration maxAge;
+    private final double cpus;
+
+    private final Map<String, Deque<PooledContainer>> pools = new ConcurrentHashMap<>();
+    private final Map<String, AtomicBoolean> refilling = new ConcurrentHashMap<>();
+
+    private record PooledContainer(String containerId, Instant createdAt) {
+    }
+
+    public ContainerPoolService(Language language,
+                                DockerClient dockerClient,
+                                ContainerReaper reaper,
+                                ExecutionBackendSelector backendSelector,
+                                CompilerCache compilerCache,
+                                MeterRegistry meterRegistry,
+                                @Value("${sandbox.pool.size-per-language:2}") int poolSize,
+                                @Value("${sandbox.pool.max-age-seconds:20}") long maxAgeSeconds,
+                                @Value("${sandbox.container.cpus:0}") double cpus) {
+        this.language = language;
+        this.dockerClient = dockerClient;
+        this.reaper = reaper;
+        this.backendSelector = backendSelector;
+        this.compilerCache = compilerCache;
+        this.meterRegistry = meterRegistry;
+        this.poolSize = poolSize;
+        this.maxAge = Duration.ofSeconds(maxAgeSeconds);
+        this.cpus = cpus;
+        if (maxAge.compareTo(CONTAINER_LIFETIME) >= 0) {
+            throw new IllegalStateException("sandbox.pool.max-age-seconds must be below the container lifetime of "
+                    + CONTAINER_LIFETIME.toSeconds() + "s");
+        }
+    }
+
+    /**
+     * How long a container handed out by {@link #acquire} or {@link #startContainer} is
+     * guaranteed to keep running.
+     */
+    public Duration getSessionBudget() {
+        return CONTAINER_LIFETIME.minus(maxAge);
+    }
+
+    /**
+     * CPU quota of each sandbox container in CPUs, 0 when unlimited.
+     */
+    public double getCpus() {
+        return cpus;
+    }
+
+    @PostConstruct
+    void init() {
+        for (String lang : language.getLanguageMap().keySet()) {
+            // languages on another execution backend never ask for a container
+            if (!DockerExecutionBackend.NAME.equals(backendSelector.backendFor(lang))) {
+                continue;
+            }
+            Deque<PooledContainer> pool = new ConcurrentLinkedDeque<>();
+            pools.put(lang, pool);
+            refilling.put(lang, new AtomicBoolean(false));
+            Gauge.builder("sandbox.pool.available", pool, Deque::size)
+                    .tag("language", lang)
+                    .register(meterRegistry);
+            scheduleRefill(lang);
+        }
+    }
+
+    /**
+     * Returns a warm container id for the language, or {@code null} when the pool is empty
+     * and the caller has to fall back to {@link #startContainer(String, String)}.
+     */
+    public String acquire(String lang) {
+        Deque<PooledContainer> pool = pools.get(lang);
+        if (pool == null) {
+            return null;
+        }
+
+        PooledContainer container;
+        while ((container = pool.pollFirst()) != null) {
+            if (isExpired(container)) {
+                retire(container);
+                continue;
+            }
+            counter(lang, "hit").increment();
+            scheduleRefill(lang);
+            return container.containerId();
+        }
+
+        counter(lang, "miss").increment();
+        scheduleRefill(lang);
+        return null;
+    }
+
+    /**
+     * Starts a container labeled with {@code sessionId}: the websocket session, run or judge id,
+     * or "pool" for warm containers, which are started before anyone acquires them.
+     */
+    public Mono<String> startContainer(String lang, String sessionId) {
+        return dockerClient.runContainer(sandboxConfig(lang, sessionId))
+                .doOnNext(reaper::track)
+                .onErrorMap(e -> new RuntimeException("Error spinning up the container", e));
+    }
+
+    /**
+     * Hands the container to the reaper; removal happens in the background.
+     */
+    public void destroyContainer(String containerId) {
+        reaper.destroy(containerId);
+    }
+
+    // Same limits the docker run command used to apply
+    private Map<String, Object> sandboxConfig(String lang, String sessionId) {
+        Map<String, Object> hostConfig = new HashMap<>(Map.of(
+                "AutoRemove", true,
+                "Memory", SANDBOX_MEMORY_BYTES,
+                "PidsLimit", 100,
+                "Ulimits", List.of(
+                        Map.of("Name", "cpu", "Soft", 15, "Hard", 15),
+                        Map.of("Name", "nproc", "Soft", 100, "Hard", 100),
+                        Map.of("Name", "fsize", "Soft", 5000000, "Hard", 5000000)
+                ),
+                "SecurityOpt", List.of("no-new-privileges:true")
+        ));
+        if (cpus > 0) {
+            hostConfig.put("NanoCpus", (long) (cpus * 1_000_000_000L));
+        }
+        if (compilerCache.isEnabled(lang)) {
+            hostConfig.put("Mounts", compilerCache.mounts(lang));
+        }
+        return Map.of(
+                "Image", lang + "-image",
+                "User", "1002",
+                "Env", compilerCache.env(lang),
+                "Labels", reaper.labels(sessionId),
+                "HostConfig", hostConfig
+        );
+    }
+
+    @Scheduled(fixedDelayString = "${sandbox.pool.maintenance-interval-ms:5000}")
+    public void maintain() {
+        pools.forEach((lang, pool) -> {
+            pool.removeIf(container -> {
+                if (isExpired(container)) {
+                    retire(container);
+                    return true;
+                }
+                return false;
+            });
+            scheduleRefill(lang);
+        });
+    }
+
+    private void scheduleRefill(String lang) {
+        if (poolSize <= 0) {
+            return;
+        }
+        AtomicBoolean inProgress = refilling.get(lang);
+        if (!inProgress.compareAndSet(false, true)) {
+            return;
+        }
+        Deque<PooledContainer> pool = pools.get(lang);
+        Timer refillTimer = Timer.builder("sandbox.pool.refill")
+                .tag("language", lang)
+                .register(meterRegistry);
+
+        Flux.range(0, Math.max(0, poolSize - pool.size()))
+                .concatMap(i -> {
+                    long start = System.nanoTime();
+                    return startContainer(lang, "pool")
+                            .doOnNext(containerId -> {
+                                refillTimer.record(Duration.ofNanos(System.nanoTime() - start));
+                                pool.addLast(new PooledContainer(containerId, Instant.now()));
+                            });
+                })
+                .doFinally(signalType -> inProgress.set(false))
+                .subscribe(
+                        containerId -> { },
+                        e -> log.warn("Could not refill container pool for {}: {}", lang, e.getMessage())
+                );
+    }
+
+    private boolean isExpired(PooledContainer container) {
+        return container.createdAt().plus(maxAge).isBefore(Instant.now());
+    }
+
+    private void retire(PooledContainer container) {
+        destroyContainer(container.containerId());
+    }
+
+    private Counter counter(String lang, String result) {
+        return Counter.builder("sandbox.pool.requests")
+                .tag("language", lang)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    // Runs before the reaper shuts down, which removes whatever is still queued
+    @PreDestroy
+    void shutdown() {
+        for (Deque<PooledContainer> pool : pools.values()) {
+            PooledContainer container;
+            while ((container = pool.pollFirst()) != null) {
+                retire(container);
+            }
+        }
+    }
+}
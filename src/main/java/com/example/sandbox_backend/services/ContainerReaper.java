@@ -0,0 +1,233 @@
+package com.example.sandbox_backend.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Single owner of sandbox container teardown. Every container this node starts carries the
+ * {@value #LABEL_OWNER} and {@value #LABEL_SESSION} labels and is tracked while in use.
+ * Destroy requests are queued, deduplicated and removed in batches off the request path.
+ * Containers labeled with this node that are not tracked (left behind by a crash or a lost
+ * request) or have exited are swept at startup and periodically. The sweep also forgets tracked
+ * containers that went away on their own (entrypoint timeout with AutoRemove).
+ */
+@Service
+public class ContainerReaper {
+
+    private static final Logger log = LoggerFactory.getLogger(ContainerReaper.class);
+    public static final String LABEL_OWNER = "sandbox.owner";
+    public static final String LABEL_SESSION = "sandbox.session";
+    private static final int RECENTLY_REMOVED_SIZE = 1024;
+
+    private final DockerClient dockerClient;
+    private final String nodeId;
+    private final int batchSize;
+    private final int concurrency;
+    private final Duration orphanGrace;
+    private final Instant processStart = Instant.ofEpochMilli(ManagementFactory.getRuntimeMXBean().getStartTime());
+    private final Counter removed;
+    private final Counter orphans;
+    private final Timer teardown;
+
+    // containers in use and when they were tracked
+    private final Map<String, Instant> live = new ConcurrentHashMap<>();
+    // pending destroys in request order, plus recently removed ids to drop late duplicates; guarded by "this"
+    private final LinkedHashSet<String> pending = new LinkedHashSet<>();
+    private final Set<String> recentlyRemoved = Collections.newSetFromMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > RECENTLY_REMOVED_SIZE;
+        }
+    });
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    public ContainerReaper(DockerClient dockerClient,
+                           MeterRegistry meterRegistry,
+                           @Value("${sandbox.node-id:${HOSTNAME:sandbox-node}}") String nodeId,
+                           @Value("${sandbox.reaper.batch-size:32}") int batchSize,
+                           @Value("${sandbox.reaper.concurrency:8}") int concurrency,
+                           @Value("${sandbox.reaper.orphan-grace-seconds:30}") long orphanGraceSeconds) {
+        this.dockerClient = dockerClient;
+        this.nodeId = nodeId;
+        this.batchSize = batchSize;
+        this.concurrency = concurrency;
+        this.orphanGrace = Duration.ofSeconds(orphanGraceSeconds);
+        this.removed = Counter.builder("sandbox.reaper.removed").register(meterRegistry);
+        this.orphans = Counter.builder("sandbox.reaper.orphans").register(meterRegistry);
+        // the teardown phase of a run; removal happens here, away from the language that started it
+        this.teardown = Timer.builder("sandbox.reaper.remove")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Gauge.builder("sandbox.reaper.pending", this, ContainerReaper::getPending).register(meterRegistry);
+        Gauge.builder("sandbox.containers.live", live, Map::size).register(meterRegistry);
+    }
+
+    @PostConstruct
+    void init() {
+        log.info("Reaping sandbox containers labeled {}={}", LABEL_OWNER, nodeId);
+        sweepOrphans();
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public synchronized int getPending() {
+        return pending.size();
+    }
+
+    /**
+     * Labels to put on a container started for {@code sessionId}.
+     */
+    public Map<String, String> labels(String sessionId) {
+        return Map.of(LABEL_OWNER, nodeId, LABEL_SESSION, sessionId);
+    }
+
+    /**
+     * Marks a container as in use so the orphan sweep leaves it alone.
+     */
+    public void track(String containerId) {
+        live.put(containerId, Instant.now());
+    }
+
+    /**
+     * Queues a container for removal. Requests for a container that is already queued or was
+     * just removed are ignored.
+     */
+    public void destroy(String containerId) {
+        live.remove(containerId);
+        synchronized (this) {
+            if (recentlyRemoved.contains(containerId) || !pending.add(containerId)) {
+                return;
+            }
+        }
+        if (getPending() >= batchSize) {
+            drain();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${sandbox.reaper.interval-ms:500}")
+    public void drain() {
+        if (!draining.compareAndSet(false, true)) {
+            return;
+        }
+        List<String> batch = nextBatch();
+        if (batch.isEmpty()) {
+            draining.set(false);
+            return;
+        }
+        removeAll(batch)
+                .doFinally(signalType -> {
+                    draining.set(false);
+                    if (getPending() > 0) {
+                        drain();
+                    }
+                })
+                .subscribe();
+    }
+
+    /**
+     * Removes containers labeled with this node that are not in use: everything created before
+     * this process started, exited containers, and untracked containers older than the grace
+     * period. Tracked containers missing from the listing are forgotten.
+     */
+    @Scheduled(initialDelayString = "${sandbox.reaper.sweep-interval-ms:60000}",
+            fixedDelayString = "${sandbox.reaper.sweep-interval-ms:60000}")
+    public void sweepOrphans() {
+        Instant listedAt = Instant.now();
+        Instant graceCutoff = listedAt.minus(orphanGrace);
+        Set<String> listed = ConcurrentHashMap.newKeySet();
+        dockerClient.listContainers(Map.of(LABEL_OWNER, nodeId))
+                .doOnNext(container -> listed.add(id(container)))
+                .filter(container -> {
+                    Instant created = Instant.ofEpochSecond(container.path("Created").asLong());
+                    String state = container.path("State").asText();
+                    return created.isBefore(processStart)
+                            || state.equals("exited") || state.equals("dead")
+                            || (!live.containsKey(id(container)) && created.isBefore(graceCutoff));
+                })
+                .map(ContainerReaper::id)
+                .doOnNext(id -> {
+                    orphans.increment();
+                    destroy(id);
+                })
+                .count()
+                // containers tracked after the listing started may just not be in it yet
+                .doOnNext(count -> live.entrySet().removeIf(entry ->
+                        entry.getValue().isBefore(listedAt) && !listed.contains(entry.getKey())))
+                .subscribe(
+                        count -> {
+                            if (count > 0) {
+                                log.info("Queued {} orphaned sandbox containers for removal", count);
+                            }
+                        },
+                        e -> log.warn("Orphan sweep failed: {}", e.getMessage())
+                );
+    }
+
+    private synchronized List<String> nextBatch() {
+        List<String> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+        var it = pending.iterator();
+        while (batch.size() < batchSize && it.hasNext()) {
+            String id = it.next();
+            it.remove();
+            recentlyRemoved.add(id);
+            batch.add(id);
+        }
+        return batch;
+    }
+
+    private Mono<Void> removeAll(List<String> containerIds) {
+        return Flux.fromIterable(containerIds)
+                .flatMap(id -> Mono.defer(() -> {
+                            Timer.Sample sample = Timer.start();
+                            return dockerClient.removeContainer(id, true)
+                                    .doOnNext(existed -> sample.stop(teardown));
+                        })
+                        .doOnNext(existed -> removed.increment())
+                        .onErrorResume(e -> {
+                            log.error("Error removing container {}", id, e);
+                            return Mono.just(false);
+                        }), concurrency)
+                .then();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        List<String> remaining = new ArrayList<>();
+        List<String> batch;
+        while (!(batch = nextBatch()).isEmpty()) {
+            remaining.addAll(batch);
+        }
+        removeAll(remaining).block(Duration.ofSeconds(30));
+    }
+
+    private static String id(JsonNode container) {
+        return container.path("Id").asText();
+    }
+}
@@ -0,0 +1,304 @@
+package com.example.sandbox_backend.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import lombok.Getter;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal non-blocking client for the Docker Engine API spoken over the daemon's unix socket.
+ * Only the calls the sandbox needs are implemented; multiplexed exec/attach output is
+ * demultiplexed into {@link StreamFrame}s.
+ */
+@Component
+public class DockerClient {
+
+    private static final String API_VERSION = "/v1.41";
+    public static final int STDOUT = 1;
+    public static final int STDERR = 2;
+
+    private final HttpClient httpClient;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Autowired
+    public DockerClient(@Value("${docker.socket-path:/var/run/docker.sock}") String socketPath) {
+        this(HttpClient.create()
+                .remoteAddress(() -> new DomainSocketAddress(socketPath)));
+    }
+
+    DockerClient(HttpClient httpClient) {
+        this.httpClient = httpClient
+                .headers(h -> h.set(HttpHeaderNames.HOST, "docker"));
+    }
+
+    public record StreamFrame(int stream, byte[] payload) {
+    }
+
+    @Getter
+    public static class DockerApiException extends RuntimeException {
+        private final int status;
+
+        public DockerApiException(int status, String message) {
+            super("Docker API returned " + status + ": " + message);
+            this.status = status;
+        }
+    }
+
+    public Mono<Boolean> ping() {
+        return httpClient.get()
+                .uri(API_VERSION + "/_ping")
+                .responseSingle((response, content) -> content.then(Mono.just(response.status().code() == 200)))
+                .onErrorReturn(false);
+    }
+
+    /**
+     * Creates a container from a raw Engine API config (Image, Cmd, HostConfig, Labels ...)
+     * and returns its id.
+     */
+    public Mono<String> createContainer(Map<String, Object> config) {
+        return request(HttpMethod.POST, API_VERSION + "/containers/create", config)
+                .map(json -> json.path("Id").asText());
+    }
+
+    public Mono<Void> startContainer(String containerId) {
+        return request(HttpMethod.POST, API_VERSION + "/containers/" + containerId + "/start", null)
+                .then();
+    }
+
+    public Mono<String> runContainer(Map<String, Object> config) {
+        return createContainer(config)
+                .flatMap(containerId -> startContainer(containerId).thenReturn(containerId));
+    }
+
+    public Mono<JsonNode> inspectContainer(String containerId) {
+        return request(HttpMethod.GET, API_VERSION + "/containers/" + containerId + "/json", null);
+    }
+
+    /**
+     * Lists containers (including stopped ones) whose labels match every {@code key=value} in {@code labels}.
+     */
+    public Flux<JsonNode> listContainers(Map<String, String> labels) {
+        List<String> labelFilters = labels.entrySet().stream()
+                .map(entry -> entry.getKey() + "=" + entry.getValue())
+                .toList();
+        return Mono.fromCallable(() -> mapper.writeValueAsString(Map.of("label", labelFilters)))
+                .flatMap(filters -> request(HttpMethod.GET,
+                        API_VERSION + "/containers/json?all=1&filters=" + encodeQuery(filters), null))
+                .flatMapIterable(json -> json);
+    }
+
+    /**
+     * Total CPU time the container has used so far, from a one-shot stats sample.
+     */
+    public Mono<Long> cpuUsageNanos(String containerId) {
+        return request(HttpMethod.GET, API_VERSION + "/containers/" + containerId + "/stats?stream=false&one-shot=true", null)
+                .map(json -> json.path("cpu_stats").path("cpu_usage").path("total_usage").asLong());
+    }
+
+    /**
+     * Removes a container. Emits {@code false} when the container did not exist anymore.
+     */
+    public Mono<Boolean> removeContainer(String containerId, boolean force) {
+        return request(HttpMethod.DELETE, API_VERSION + "/containers/" + containerId + "?force=" + force, null)
+                .thenReturn(true)
+                .onErrorResume(DockerApiException.class, e -> e.getStatus() == 404
+                        ? Mono.just(false)
+                        : Mono.error(e));
+    }
+
+    public Flux<StreamFrame> attach(String containerId) {
+        return stream(API_VERSION + "/containers/" + containerId + "/attach?stream=1&stdout=1&stderr=1", null);
+    }
+
+    public Mono<String> execCreate(String containerId, List<String> cmd) {
+        return execCreate(containerId, cmd, null);
+    }
+
+    /**
+     * Creates an exec that runs as {@code user} (uid or name), or as the container's user when null.
+     */
+    public Mono<String> execCreate(String containerId, List<String> cmd, String user) {
+        Map<String, Object> config = new HashMap<>(Map.of(
+                "AttachStdout", true,
+                "AttachStderr", true,
+                "Tty", false,
+                "Cmd", cmd
+        ));
+        if (user != null) {
+            config.put("User", user);
+        }
+        return request(HttpMethod.POST, API_VERSION + "/containers/" + containerId + "/exec", config)
+                .map(json -> json.path("Id").asText());
+    }
+
+    public Flux<StreamFrame> execStart(String execId) {
+        return stream(API_VERSION + "/exec/" + execId + "/start", Map.of("Detach", false, "Tty", false));
+    }
+
+    public Mono<Long> execExitCode(String execId) {
+        return request(HttpMethod.GET, API_VERSION + "/exec/" + execId + "/json", null)
+                .map(json -> json.path("ExitCode").asLong(-1));
+    }
+
+    /**
+     * Runs a command inside the container, discards its output and emits its exit code.
+     */
+    public Mono<Long> exec(String containerId, List<String> cmd) {
+        return execCreate(containerId, cmd)
+                .flatMap(execId -> execStart(execId)
+                        .then(execExitCode(execId)));
+    }
+
+    public Mono<JsonNode> inspectImage(String image) {
+        return request(HttpMethod.GET, API_VERSION + "/images/" + image + "/json", null);
+    }
+
+    /**
+     * Downloads {@code path} from the container as a tar archive.
+     */
+    public Mono<byte[]> getArchive(String containerId, String path) {
+        return httpClient.get()
+                .uri(API_VERSION + "/containers/" + containerId + "/archive?path=" + encodeQuery(path))
+                .responseSingle((response, content) -> {
+                    int status = response.status().code();
+                    if (status >= 300) {
+                        return content.asString()
+                                .defaultIfEmpty("")
+                                .flatMap(text -> Mono.<byte[]>error(new DockerApiException(status, text)));
+                    }
+                    return content.asByteArray();
+                });
+    }
+
+    /**
+     * Extracts a tar archive into {@code path} inside the container.
+     */
+    public Mono<Void> putArchive(String containerId, String path, byte[] tar) {
+        return putArchive(containerId, path, Mono.fromCallable(() -> Unpooled.wrappedBuffer(tar)));
+    }
+
+    /**
+     * Streams a tar archive into {@code path} inside the container. Buffers are released once written.
+     */
+    public Mono<Void> putArchive(String containerId, String path, Publisher<? extends ByteBuf> tar) {
+        return httpClient
+                .headers(h -> h.set(HttpHeaderNames.CONTENT_TYPE, "application/x-tar"))
+                .put()
+                .uri(API_VERSION + "/containers/" + containerId + "/archive?path=" + encodeQuery(path))
+                .send(tar)
+                .responseSingle((response, content) -> checkStatus(response.status().code(), content.asString()))
+                .then();
+    }
+
+    private Mono<JsonNode> request(HttpMethod method, String uri, Object body) {
+        return httpClient
+                .headers(h -> h.set(HttpHeaderNames.CONTENT_TYPE, "application/json"))
+                .request(method)
+                .uri(uri)
+                .send(encode(body))
+                .responseSingle((response, content) -> content.asString()
+                        .defaultIfEmpty("")
+                        .flatMap(text -> {
+                            int status = response.status().code();
+                            if (status >= 300 && status != 304) {
+                                return Mono.error(new DockerApiException(status, text));
+                            }
+                            return Mono.fromCallable(() -> text.isEmpty()
+                                    ? mapper.missingNode()
+                                    : mapper.readTree(text));
+                        }));
+    }
+
+    private Flux<StreamFrame> stream(String uri, Object body) {
+        return Flux.defer(() -> {
+            StreamDemuxer demuxer = new StreamDemuxer();
+            return httpClient
+                    .headers(h -> h.set(HttpHeaderNames.CONTENT_TYPE, "application/json"))
+                    .post()
+                    .uri(uri)
+                    .send(encode(body))
+                    .response((response, content) -> {
+                        int status = response.status().code();
+                        if (status >= 300) {
+                            return content.aggregate().asString()
+                                    .defaultIfEmpty("")
+                                    .flatMapMany(text -> Flux.<StreamFrame>error(new DockerApiException(status, text)));
+                        }
+                        return content.asByteArray()
+                                .concatMapIterable(demuxer::decode);
+                    });
+        });
+    }
+
+    private Mono<JsonNode> checkStatus(int status, Mono<String> content) {
+        return content.defaultIfEmpty("")
+                .flatMap(text -> status >= 300
+                        ? Mono.<JsonNode>error(new DockerApiException(status, text))
+                        : Mono.just(mapper.missingNode()));
+    }
+
+    private static String encodeQuery(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private Mono<ByteBuf> encode(Object body) {
+        if (body == null) {
+            return Mono.empty();
+        }
+        return Mono.fromCallable(() -> Unpooled.wrappedBuffer(mapper.writeValueAsBytes(body)));
+    }
+
+    /**
+     * Splits Docker's multiplexed stream format (8 byte header: stream type, 3 padding bytes,
+     * big-endian payload length) into frames, keeping partial frames between chunks.
+     */
+    static final class StreamDemuxer {
+        private static final int HEADER_SIZE = 8;
+        private byte[] pending = new byte[0];
+
+        List<StreamFrame> decode(byte[] chunk) {
+            byte[] data = pending.length == 0 ? chunk : concat(pending, chunk);
+            List<StreamFrame> frames = new ArrayList<>();
+            int offset = 0;
+            while (data.length - offset >= HEADER_SIZE) {
+                int size = ((data[offset + 4] & 0xff) << 24)
+                        | ((data[offset + 5] & 0xff) << 16)
+                        | ((data[offset + 6] & 0xff) << 8)
+                        | (data[offset + 7] & 0xff);
+                if (data.length - offset - HEADER_SIZE < size) {
+                    break;
+                }
+                int start = offset + HEADER_SIZE;
+                frames.add(new StreamFrame(data[offset], Arrays.copyOfRange(data, start, start + size)));
+                offset = start + size;
+            }
+            pending = Arrays.copyOfRange(data, offset, data.length);
+            return frames;
+        }
+
+        private static byte[] concat(byte[] a, byte[] b) {
+            byte[] result = Arrays.copyOf(a, a.length + b.length);
+            System.arraycopy(b, 0, result, a.length, b.length);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.sandbox_backend.services;
+
+import com.example.sandbox_backend.util.TarUtil;
+import io.netty.buffer.ByteBufAllocator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs in a per-language Docker container, taken from the warm pool or cold-started. Containers
+ * are managed through the Engine API; the PTY, batch and compile processes are still
+ * {@code docker exec} through the CLI ({@code sandbox.exec.docker-command}), which needs the same
+ * socket access as the API, not sudo.
+ */
+@Service
+public class DockerExecutionBackend implements ExecutionBackend {
+
+    public static final String NAME = "docker";
+    private static final Logger log = LoggerFactory.getLogger(DockerExecutionBackend.class);
+
+    private final ContainerPoolService containerPool;
+    private final DockerClient dockerClient;
+    private final DockerHealthMonitor dockerHealth;
+    private final ExecMetrics execMetrics;
+    private final CompilerCache compilerCache;
+    private final List<String> dockerCommand;
+
+    public DockerExecutionBackend(ContainerPoolService containerPool,
+                                  DockerClient dockerClient,
+                                  DockerHealthMonitor dockerHealth,
+                                  ExecMetrics execMetrics,
+                                  CompilerCache compilerCache,
+                                  @Value("${sandbox.exec.docker-command:docker}") String dockerCommand) {
+        this.containerPool = containerPool;
+        this.dockerClient = dockerClient;
+        this.dockerHealth = dockerHealth;
+        this.execMetrics = execMetrics;
+        this.compilerCache = compilerCache;
+        this.dockerCommand = List.of(dockerCommand.trim().split("\\s+"));
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public Mono<Boolean> isAvailable() {
+        return dockerHealth.isAvailable()
+                .doOnNext(available -> {
+                    if (!available) {
+                        log.error("Docker is not available, check access to the Docker socket");
+                    }
+                });
+    }
+
+    @Override
+    public Mono<String> acquire(String language, String sessionId) {
+        return Mono.defer(() -> {
+            String containerId = containerPool.acquire(language);
+            if (containerId != null) {
+                // labels are fixed at creation, so a warm container stays labeled "pool"
+                log.debug("Session {} got pooled container {}", sessionId, containerId);
+                return Mono.just(containerId);
+            }
+            // Pool is empty, cold-start a container
+            return execMetrics.time(containerPool.startContainer(language, sessionId),
+                    ExecMetrics.CREATE, execMetrics.languageTag(language));
+        });
+    }
+
+    /**
+     * Uploads the file as a single-file tar through the container archive API.
+     */
+    @Override
+    public Mono<Void> saveFile(String containerId, String fileName, String content) {
+        return dockerClient.putArchive(containerId, WORKDIR, Mono.fromCallable(() ->
+                TarUtil.singleFileArchive(ByteBufAllocator.DEFAULT, fileName, content, SANDBOX_UID)));
+    }
+
+    @Override
+    public List<String> commandLine(String containerId, String command, boolean tty) {
+        List<String> cmd = new ArrayList<>(dockerCommand);
+        cmd.addAll(List.of("exec", tty ? "-it" : "-i", containerId, "sh", "-c", command));
+        return cmd;
+    }
+
+    /**
+     * Compiles as the owner of the compiler cache when the language has one.
+     */
+    @Override
+    public Process startCompileProcess(String containerId, String language, String command) throws IOException {
+        String user = compilerCache.compileUser(language);
+        if (user == null) {
+            return startBatchProcess(containerId, command);
+        }
+        List<String> cmd = new ArrayList<>(dockerCommand);
+        cmd.addAll(List.of("exec", "-i", "-u", user, containerId, "sh", "-c",
+                compilerCache.compileCommand(language, command)));
+        return new ProcessBuilder(cmd).start();
+    }
+
+    /**
+     * Total CPU time of the container. Every run gets a fresh container, so this is the run's.
+     */
+    @Override
+    public Mono<Duration> cpuTime(String containerId) {
+        return dockerClient.cpuUsageNanos(containerId)
+                .map(Duration::ofNanos)
+                .onErrorResume(e -> {
+                    log.warn("Could not read CPU usage of {}: {}", containerId, e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    @Override
+    public double cpuLimit() {
+        return containerPool.getCpus();
+    }
+
+    @Override
+    public long memoryLimit() {
+        return ContainerPoolService.SANDBOX_MEMORY_BYTES;
+    }
+
+    @Override
+    public Duration lifetime() {
+        return containerPool.getSessionBudget();
+    }
+
+    @Override
+    public void release(String containerId) {
+        containerPool.destroyContainer(containerId);
+    }
+
+    @Override
+    public boolean isDockerContainer() {
+        return true;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.sandbox_backend.services;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Probes the Docker daemon in the background and caches the result, so request paths only
+ * read a flag instead of pinging the daemon. A result older than {@code sandbox.docker.health.ttl-ms}
+ * is re-probed on demand; concurrent callers share that probe. Also exposed as the "docker"
+ * health indicator, which is part of the readiness group.
+ */
+@Service("dockerHealthIndicator")
+public class DockerHealthMonitor implements HealthIndicator {
+
+    private static final Logger log = LoggerFactory.getLogger(DockerHealthMonitor.class);
+
+    private final DockerClient dockerClient;
+    private final Duration ttl;
+    private final Duration probeTimeout;
+
+    private volatile Status status = new Status(false, Instant.EPOCH);
+    private final AtomicReference<Mono<Boolean>> inFlight = new AtomicReference<>();
+
+    private record Status(boolean available, Instant checkedAt) {
+    }
+
+    public DockerHealthMonitor(DockerClient dockerClient,
+                               MeterRegistry meterRegistry,
+                               @Value("${sandbox.docker.health.ttl-ms:15000}") long ttlMillis,
+                               @Value("${sandbox.docker.health.timeout-ms:2000}") long timeoutMillis) {
+        this.dockerClient = dockerClient;
+        this.ttl = Duration.ofMillis(ttlMillis);
+        this.probeTimeout = Duration.ofMillis(timeoutMillis);
+        Gauge.builder("sandbox.docker.available", this, monitor -> monitor.status.available() ? 1 : 0)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Last known daemon state; only probes when the cached result has expired.
+     */
+    public Mono<Boolean> isAvailable() {
+        Status current = status;
+        if (current.checkedAt().plus(ttl).isAfter(Instant.now())) {
+            return Mono.just(current.available());
+        }
+        return probe();
+    }
+
+    @Scheduled(fixedDelayString = "${sandbox.docker.health.interval-ms:5000}")
+    public void refresh() {
+        probe().subscribe();
+    }
+
+    private Mono<Boolean> probe() {
+        Mono<Boolean> existing = inFlight.get();
+        if (existing != null) {
+            return existing;
+        }
+        Mono<Boolean> probe = dockerClient.ping()
+                .timeout(probeTimeout, Mono.just(false))
+                .onErrorReturn(false)
+                .doOnNext(this::record)
+                .doFinally(signalType -> inFlight.set(null))
+                .cache();
+        return inFlight.compareAndSet(null, probe) ? probe : probe();
+    }
+
+    private void record(boolean available) {
+        Status previous = status;
+        status = new Status(available, Instant.now());
+        if (previous.available() != available) {
+            if (available) {
+                log.info("Docker daemon is available");
+            } else {
+                log.error("Docker daemon is not available");
+            }
+        }
+    }
+
+    @Override
+    public Health health() {
+        Status current = status;
+        Health.Builder builder = current.available() ? Health.up() : Health.down();
+        return builder.withDetail("checkedAt", current.checkedAt().toString()).build();
+    }
+}
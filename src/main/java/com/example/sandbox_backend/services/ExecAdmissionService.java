@@ -0,0 +1,265 @@
+package com.example.sandbox_backend.services;
+
+import com.example.sandbox_backend.mappings.Language;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Admission control in front of code execution. At most {@code maxConcurrent} runs hold a
+ * sandbox at once (derived from host memory unless configured), each user and each IP may only
+ * have a few runs running or waiting, and waiting runs are served round-robin across users,
+ * FIFO per user. Waiting callers get their queue position whenever it changes.
+ * All queue state is guarded by {@code this}.
+ */
+@Service
+public class ExecAdmissionService {
+
+    private static final Logger log = LoggerFactory.getLogger(ExecAdmissionService.class);
+
+    private final int maxConcurrent;
+    private final int maxPerUser;
+    private final int maxPerIp;
+    private final int maxQueued;
+    private final Timer queueWait;
+
+    // user key -> waiting tickets; iteration order is the round-robin order
+    private final LinkedHashMap<String, Deque<Ticket>> queues = new LinkedHashMap<>();
+    private final Map<String, Integer> perUser = new HashMap<>();
+    private final Map<String, Integer> perIp = new HashMap<>();
+    private int running;
+    private int queued;
+
+    private static final class Ticket {
+        final String userKey;
+        final String ip;
+        final long enqueuedAt = System.nanoTime();
+        final Sinks.Many<Integer> positions = Sinks.many().unicast().onBackpressureBuffer();
+        final Sinks.Empty<Void> admission = Sinks.empty();
+        final AtomicBoolean finished = new AtomicBoolean();
+        boolean admitted;
+        int lastPosition;
+
+        Ticket(String userKey, String ip) {
+            this.userKey = userKey;
+            this.ip = ip;
+        }
+    }
+
+    /**
+     * A run was turned away; {@code serverBusy} when the global queue is full rather than a
+     * per-user or per-IP cap being hit.
+     */
+    public static class AdmissionRejectedException extends RuntimeException {
+        private final boolean serverBusy;
+
+        public AdmissionRejectedException(String message, boolean serverBusy) {
+            super(message);
+            this.serverBusy = serverBusy;
+        }
+
+        public boolean isServerBusy() {
+            return serverBusy;
+        }
+    }
+
+    public ExecAdmissionService(Language language,
+                                MeterRegistry meterRegistry,
+                                @Value("${sandbox.admission.max-concurrent:0}") int maxConcurrent,
+                                @Value("${sandbox.admission.memory-fraction:0.75}") double memoryFraction,
+                                @Value("${sandbox.admission.container-memory-bytes:268435456}") long containerMemoryBytes,
+                                @Value("${sandbox.pool.size-per-language:2}") int poolSizePerLanguage,
+                                @Value("${sandbox.admission.max-per-user:2}") int maxPerUser,
+                                @Value("${sandbox.admission.max-per-ip:4}") int maxPerIp,
+                                @Value("${sandbox.admission.max-queued:500}") int maxQueued) {
+        this.maxConcurrent = maxConcurrent > 0
+                ? maxConcurrent
+                : concurrencyFromMemory(memoryFraction, containerMemoryBytes,
+                poolSizePerLanguage * language.getLanguageMap().size());
+        this.maxPerUser = maxPerUser;
+        this.maxPerIp = maxPerIp;
+        this.maxQueued = maxQueued;
+        this.queueWait = Timer.builder("sandbox.admission.queue.wait")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Gauge.builder("sandbox.admission.running", this, ExecAdmissionService::getRunning).register(meterRegistry);
+        Gauge.builder("sandbox.admission.queued", this, ExecAdmissionService::getQueued).register(meterRegistry);
+        log.info("Admitting at most {} concurrent runs", this.maxConcurrent);
+    }
+
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    public synchronized int getQueued() {
+        return queued;
+    }
+
+    public int getMaxPerUser() {
+        return maxPerUser;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * Runs {@code task} once a slot is free. While waiting, {@code positionUpdate} turns the
+     * 1-based queue position into an element of the returned stream. The slot is released when
+     * the task terminates or the subscriber cancels.
+     */
+    public <T> Flux<T> run(String userKey, String ip, IntFunction<T> positionUpdate, Supplier<Flux<T>> task) {
+        return Flux.defer(() -> {
+            Ticket ticket = new Ticket(userKey, ip);
+            List<Ticket> admitted = new ArrayList<>();
+            AdmissionRejectedException rejection = enqueue(ticket, admitted);
+            if (rejection != null) {
+                return Flux.error(rejection);
+            }
+            admitted.forEach(ExecAdmissionService::signalAdmitted);
+
+            Flux<T> updates = ticket.positions.asFlux().map(positionUpdate::apply);
+            Flux<T> work = ticket.admission.asMono().thenMany(Flux.defer(task));
+            return Flux.concat(updates, work)
+                    .doFinally(signalType -> finish(ticket));
+        });
+    }
+
+    /**
+     * Runs a task that produces a single result, without queue position updates.
+     */
+    public <T> Mono<T> run(String userKey, String ip, Supplier<Mono<T>> task) {
+        return run(userKey, ip, position -> Optional.<T>empty(), () -> task.get().map(Optional::of).flux())
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .next();
+    }
+
+    private synchronized AdmissionRejectedException enqueue(Ticket ticket, List<Ticket> admitted) {
+        if (perUser.getOrDefault(ticket.userKey, 0) >= maxPerUser) {
+            return new AdmissionRejectedException("Too many runs in progress for this user", false);
+        }
+        if (perIp.getOrDefault(ticket.ip, 0) >= maxPerIp) {
+            return new AdmissionRejectedException("Too many runs in progress from this address", false);
+        }
+        if (running >= maxConcurrent && queued >= maxQueued) {
+            return new AdmissionRejectedException("Server is busy, try again later", true);
+        }
+        perUser.merge(ticket.userKey, 1, Integer::sum);
+        perIp.merge(ticket.ip, 1, Integer::sum);
+
+        queues.computeIfAbsent(ticket.userKey, k -> new ArrayDeque<>()).addLast(ticket);
+        queued++;
+        dispatch(admitted);
+        return null;
+    }
+
+    private void finish(Ticket ticket) {
+        if (!ticket.finished.compareAndSet(false, true)) {
+            return;
+        }
+        List<Ticket> admitted = new ArrayList<>();
+        synchronized (this) {
+            if (ticket.admitted) {
+                running--;
+            } else {
+                Deque<Ticket> userQueue = queues.get(ticket.userKey);
+                if (userQueue != null && userQueue.remove(ticket)) {
+                    queued--;
+                    if (userQueue.isEmpty()) {
+                        queues.remove(ticket.userKey);
+                    }
+                }
+            }
+            decrement(perUser, ticket.userKey);
+            decrement(perIp, ticket.ip);
+            dispatch(admitted);
+        }
+        admitted.forEach(ExecAdmissionService::signalAdmitted);
+    }
+
+    // Admits waiting tickets round-robin while there is capacity, then refreshes positions.
+    // Admitted tickets are signalled by the caller once the lock is released, since that
+    // subscribes to the task.
+    private void dispatch(List<Ticket> admitted) {
+        while (running < maxConcurrent && !queues.isEmpty()) {
+            Iterator<Map.Entry<String, Deque<Ticket>>> it = queues.entrySet().iterator();
+            Map.Entry<String, Deque<Ticket>> next = it.next();
+            Ticket ticket = next.getValue().pollFirst();
+            it.remove();
+            if (!next.getValue().isEmpty()) {
+                // user goes to the back of the rotation
+                queues.put(next.getKey(), next.getValue());
+            }
+            queued--;
+            running++;
+            ticket.admitted = true;
+            queueWait.record(Duration.ofNanos(System.nanoTime() - ticket.enqueuedAt));
+            admitted.add(ticket);
+        }
+        publishPositions();
+    }
+
+    private static void signalAdmitted(Ticket ticket) {
+        ticket.positions.tryEmitComplete();
+        ticket.admission.tryEmitEmpty();
+    }
+
+    // Position = order in which the round-robin would admit the ticket
+    private void publishPositions() {
+        List<Iterator<Ticket>> rotation = new ArrayList<>();
+        for (Deque<Ticket> userQueue : queues.values()) {
+            rotation.add(userQueue.iterator());
+        }
+        int position = 0;
+        while (!rotation.isEmpty()) {
+            Iterator<Iterator<Ticket>> users = rotation.iterator();
+            while (users.hasNext()) {
+                Iterator<Ticket> userTickets = users.next();
+                if (!userTickets.hasNext()) {
+                    users.remove();
+                    continue;
+                }
+                Ticket ticket = userTickets.next();
+                position++;
+                if (ticket.lastPosition != position) {
+                    ticket.lastPosition = position;
+                    ticket.positions.tryEmitNext(position);
+                }
+            }
+        }
+    }
+
+    private static void decrement(Map<String, Integer> counts, String key) {
+        counts.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private static int concurrencyFromMemory(double memoryFraction, long containerMemoryBytes, int pooledContainers) {
+        long totalMemory = ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+                .getTotalMemorySize();
+        long available = (long) (totalMemory * memoryFraction) - (long) pooledContainers * containerMemoryBytes;
+        return (int) Math.max(1, available / containerMemoryBytes);
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.sandbox_backend.services;
+
+import com.example.sandbox_backend.mappings.Language;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-phase timings of a run ({@code sandbox.exec.phase}, tagged with phase, language and
+ * whether the language compiles with the shared compiler cache), the number of active exec
+ * sessions and the output bytes streamed per language. Tags only take values from fixed sets:
+ * unknown languages are reported as "other".
+ */
+@Component
+public class ExecMetrics {
+
+    public static final String CREATE = "create";
+    public static final String SAVE = "save";
+    public static final String RESTORE = "restore";
+    public static final String COMPILE = "compile";
+    public static final String FIRST_OUTPUT = "first_output";
+    public static final String RUN = "run";
+    public static final String EXIT = "exit";
+    public static final String TOTAL = "total";
+    public static final String NETWORK = "network";
+
+    // language tag of the noVNC desktop sessions
+    public static final String NOVNC = "novnc";
+
+    private static final String OTHER = "other";
+
+    private final MeterRegistry meterRegistry;
+    private final Language language;
+    private final CompilerCache compilerCache;
+    private final AtomicInteger activeSessions = new AtomicInteger();
+
+    public ExecMetrics(MeterRegistry meterRegistry, Language language, CompilerCache compilerCache) {
+        this.meterRegistry = meterRegistry;
+        this.language = language;
+        this.compilerCache = compilerCache;
+        Gauge.builder("sandbox.exec.sessions.active", activeSessions, AtomicInteger::get)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Maps a requested language onto the tag value used by all exec metrics.
+     */
+    public String languageTag(String requested) {
+        if (requested == null) {
+            return OTHER;
+        }
+        String trimmed = requested.trim();
+        return language.isLanguageValid(trimmed) ? trimmed : OTHER;
+    }
+
+    public Timer.Sample start() {
+        return Timer.start(meterRegistry);
+    }
+
+    public void stop(Timer.Sample sample, String phase, String languageTag) {
+        sample.stop(phaseTimer(phase, languageTag));
+    }
+
+    /**
+     * Times {@code mono} from subscription until it completes successfully.
+     */
+    public <T> Mono<T> time(Mono<T> mono, String phase, String languageTag) {
+        return Mono.defer(() -> {
+            Timer.Sample sample = start();
+            return mono.doOnSuccess(value -> stop(sample, phase, languageTag));
+        });
+    }
+
+    public void sessionStarted() {
+        activeSessions.incrementAndGet();
+    }
+
+    public void sessionEnded() {
+        activeSessions.decrementAndGet();
+    }
+
+    public Counter outputBytes(String languageTag) {
+        return Counter.builder("sandbox.exec.output.bytes")
+                .baseUnit("bytes")
+                .tag("language", languageTag)
+                .register(meterRegistry);
+    }
+
+    private Timer phaseTimer(String phase, String languageTag) {
+        return Timer.builder("sandbox.exec.phase")
+                .tag("phase", phase)
+                .tag("language", languageTag)
+                .tag("compiler_cache", compilerCache.isEnabled(languageTag) ? "on" : "off")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(10))
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.sandbox_backend.services;
+
+import com.pty4j.PtyProcess;
+import com.pty4j.PtyProcessBuilder;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Where a run executes. A sandbox is acquired per run, receives the source file, runs commands
+ * under a PTY with {@link #WORKDIR} as working directory and is released when the run ends.
+ * The backend of a language is chosen by {@link ExecutionBackendSelector}.
+ */
+public interface ExecutionBackend {
+
+    String WORKDIR = "/home/sandbox";
+    int SANDBOX_UID = 1002;
+
+    /**
+     * Name used to select this backend in {@code sandbox.backend.*}.
+     */
+    String getName();
+
+    Mono<Boolean> isAvailable();
+
+    /**
+     * Returns the id of a fresh sandbox for {@code language}.
+     */
+    Mono<String> acquire(String language, String sessionId);
+
+    Mono<Void> saveFile(String sandboxId, String fileName, String content);
+
+    /**
+     * Host command line that runs {@code command} (through sh) inside the sandbox; {@code tty}
+     * tells whether it will be attached to a PTY or to plain pipes.
+     */
+    List<String> commandLine(String sandboxId, String command, boolean tty);
+
+    /**
+     * Starts {@code command} inside the sandbox, attached to a new PTY. Blocking.
+     */
+    default PtyProcess startProcess(String sandboxId, String command) throws IOException {
+        return new PtyProcessBuilder(commandLine(sandboxId, command, true).toArray(String[]::new)).start();
+    }
+
+    /**
+     * Starts {@code command} inside the sandbox with separate stdin/stdout/stderr pipes. Blocking.
+     */
+    default Process startBatchProcess(String sandboxId, String command) throws IOException {
+        return new ProcessBuilder(commandLine(sandboxId, command, false)).start();
+    }
+
+    /**
+     * Starts the compile step {@code command} of {@code language} like {@link #startBatchProcess},
+     * as the user the backend compiles that language as. Blocking.
+     */
+    default Process startCompileProcess(String sandboxId, String language, String command) throws IOException {
+        return startBatchProcess(sandboxId, command);
+    }
+
+    /**
+     * CPU time used in the sandbox so far, or empty when the backend cannot tell.
+     */
+    default Mono<Duration> cpuTime(String sandboxId) {
+        return Mono.empty();
+    }
+
+    /**
+     * CPU quota of a sandbox in CPUs, 0 when it is not limited.
+     */
+    default double cpuLimit() {
+        return 0;
+    }
+
+    /**
+     * Memory limit of a sandbox in bytes, 0 when it is not limited.
+     */
+    default long memoryLimit() {
+        return 0;
+    }
+
+    /**
+     * How long an acquired sandbox is guaranteed to keep running, zero when it is not limited.
+     */
+    default Duration lifetime() {
+        return Duration.ZERO;
+    }
+
+    /**
+     * Tears the sandbox down in the background.
+     */
+    void release(String sandboxId);
+
+    /**
+     * Whether sandbox ids are Docker containers, which the compile step and the artifact cache
+     * rely on (exec and archive APIs).
+     */
+    default boolean isDockerContainer() {
+        return false;
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.sandbox_backend.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+/**
+ * Maps a language to the name of its {@link ExecutionBackend}: {@code sandbox.backend.<language>}
+ * when set, otherwise {@code sandbox.backend.default}.
+ */
+@Component
+public class ExecutionBackendSelector {
+
+    private final Environment environment;
+    private final String defaultBackend;
+
+    public ExecutionBackendSelector(Environment environment,
+                                    @Value("${sandbox.backend.default:docker}") String defaultBackend) {
+        this.environment = environment;
+        this.defaultBackend = defaultBackend;
+    }
+
+    public String backendFor(String language) {
+        return environment.getProperty("sandbox.backend." + language, defaultBackend).trim();
+    }
+}
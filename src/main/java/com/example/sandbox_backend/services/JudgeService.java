@@ -0,0 +1,276 @@
+package com.example.sandbox_backend.services;
+
+import com.example.sandbox_backend.dto.JudgeCaseResult;
+import com.example.sandbox_backend.dto.JudgeRequest;
+import com.example.sandbox_backend.dto.RunResult;
+import com.example.sandbox_backend.mappings.Language;
+import com.example.sandbox_backend.util.RequestUtil;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Judges a program against many test cases in one sandbox: the source is compiled once, then
+ * every case runs against the same artifact, up to the sandbox's CPU quota in parallel
+ * ({@code code.judge.parallelism} when it has none) and never more than fit into the sandbox's
+ * memory at their memory limits. Each case gets its own time limit
+ * (coreutils timeout inside the sandbox) and memory limit (ulimit -v, or the runtime's heap
+ * flag for the JVM and node). Output is compared server-side, ignoring trailing whitespace.
+ */
+@Service
+public class JudgeService {
+
+    // Headroom for docker exec on top of a case's own limit before the runner kills it from outside
+    private static final Duration KILL_GRACE = Duration.ofSeconds(2);
+    // What runtimes print when an allocation fails under the case's ulimit or heap cap
+    private static final List<String> OUT_OF_MEMORY_MESSAGES = List.of(
+            "std::bad_alloc", "MemoryError", "java.lang.OutOfMemoryError", "JavaScript heap out of memory",
+            "System.OutOfMemoryException", "runtime: out of memory", "memory allocation of", "Cannot allocate memory");
+
+    private final Language language;
+    private final CodeExecService codeExecService;
+    private final ExecAdmissionService admissionService;
+    private final ExecMetrics execMetrics;
+    private final BatchProcessRunner processRunner;
+    private final int maxCases;
+    private final int parallelism;
+    private final long defaultTimeMs;
+    private final long maxTimeMs;
+    private final long maxTotalMs;
+    private final long maxMemoryBytes;
+    private final long maxOutputBytes;
+    private final long maxStdinBytes;
+    private final Duration compileTime;
+
+    record CaseLimits(Duration time, long memoryBytes) {
+    }
+
+    public JudgeService(Language language,
+                        CodeExecService codeExecService,
+                        ExecAdmissionService admissionService,
+                        ExecMetrics execMetrics,
+                        BatchProcessRunner processRunner,
+                        @Value("${code.judge.max-cases:100}") int maxCases,
+                        @Value("${code.judge.parallelism:2}") int parallelism,
+                        @Value("${code.judge.default-time-ms:2000}") long defaultTimeMs,
+                        @Value("${code.judge.max-time-ms:10000}") long maxTimeMs,
+                        @Value("${code.judge.max-total-ms:120000}") long maxTotalMs,
+                        @Value("${code.judge.max-memory-bytes:268435456}") long maxMemoryBytes,
+                        @Value("${code.judge.max-output-bytes:65536}") long maxOutputBytes,
+                        @Value("${code.run.max-stdin-bytes:1048576}") long maxStdinBytes,
+                        @Value("${code.judge.compile-time-ms:30000}") long compileTimeMs) {
+        this.language = language;
+        this.codeExecService = codeExecService;
+        this.admissionService = admissionService;
+        this.execMetrics = execMetrics;
+        this.processRunner = processRunner;
+        this.maxCases = maxCases;
+        this.parallelism = parallelism;
+        this.defaultTimeMs = Math.min(defaultTimeMs, maxTimeMs);
+        this.maxTimeMs = maxTimeMs;
+        this.maxTotalMs = maxTotalMs;
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.maxOutputBytes = maxOutputBytes;
+        this.maxStdinBytes = maxStdinBytes;
+        this.compileTime = Duration.ofMillis(compileTimeMs);
+    }
+
+    /**
+     * Streams one result per test case in completion order, or a single compile error.
+     * The whole judge holds one admission slot and one sandbox.
+     */
+    public Flux<JudgeCaseResult> judge(JudgeRequest request, String ip) {
+        return Mono.fromCallable(() -> limits(request))
+                .zipWith(RequestUtil.currentUserKey(ip))
+                .flatMapMany(t -> admissionService.run(t.getT2(), ip, position -> Optional.<JudgeCaseResult>empty(),
+                                () -> execute(request, t.getT1()).map(Optional::of))
+                        .filter(Optional::isPresent)
+                        .map(Optional::get))
+                .onErrorMap(ExecAdmissionService.AdmissionRejectedException.class, e -> new ResponseStatusException(
+                        e.isServerBusy() ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.TOO_MANY_REQUESTS, e.getMessage()));
+    }
+
+    private Flux<JudgeCaseResult> execute(JudgeRequest request, List<CaseLimits> limits) {
+        String lang = request.language().trim();
+        String languageTag = execMetrics.languageTag(lang);
+        ExecutionBackend backend = codeExecService.backendFor(lang);
+        return backend.isAvailable()
+                .flatMapMany(available -> {
+                    if (!available) {
+                        return Flux.<JudgeCaseResult>error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                                "Sandbox backend " + backend.getName() + " not available"));
+                    }
+                    execMetrics.sessionStarted();
+                    Timer.Sample total = execMetrics.start();
+                    return backend.acquire(lang, "judge-" + UUID.randomUUID())
+                            .flatMapMany(sandboxId -> execMetrics.time(
+                                            backend.saveFile(sandboxId, "App" + language.getLanguageMap().get(lang), request.sourceCode()),
+                                            ExecMetrics.SAVE, languageTag)
+                                    .then(compile(backend, sandboxId, lang))
+                                    .flatMapMany(compileError -> compileError
+                                            .map(Flux::just)
+                                            .orElseGet(() -> Flux.range(0, limits.size())
+                                                    .flatMap(i -> runCase(backend, sandboxId, lang, i,
+                                                            request.testCases().get(i), limits.get(i)), parallelism(backend, limits))))
+                                    .doFinally(signalType -> backend.release(sandboxId)))
+                            .doFinally(signalType -> {
+                                execMetrics.sessionEnded();
+                                execMetrics.stop(total, ExecMetrics.TOTAL, languageTag);
+                            });
+                });
+    }
+
+    // Empty when there is nothing to compile or compiling succeeded
+    private Mono<Optional<JudgeCaseResult>> compile(ExecutionBackend backend, String sandboxId, String lang) {
+        if (!language.isCompiled(lang)) {
+            return Mono.just(Optional.empty());
+        }
+        return execMetrics.time(processRunner.compile(backend, sandboxId, lang, language.getCompileCommand().get(lang),
+                        compileTime, maxOutputBytes), ExecMetrics.COMPILE, execMetrics.languageTag(lang))
+                .map(result -> result.exitCode() == 0 && !result.timedOut()
+                        ? Optional.<JudgeCaseResult>empty()
+                        : Optional.of(new JudgeCaseResult(-1, JudgeCaseResult.COMPILE_ERROR, result.stdout(),
+                        result.stderr(), result.exitCode(), result.wallTimeMs())));
+    }
+
+    private Mono<JudgeCaseResult> runCase(ExecutionBackend backend, String sandboxId, String lang, int index,
+                                          JudgeRequest.TestCase testCase, CaseLimits limits) {
+        return execMetrics.time(processRunner.run(backend, sandboxId, caseCommand(lang, limits), testCase.input(),
+                        limits.time().plus(KILL_GRACE), maxOutputBytes), ExecMetrics.RUN, execMetrics.languageTag(lang))
+                .map(result -> new JudgeCaseResult(index, verdict(result, testCase.expectedOutput(), limits),
+                        result.stdout(), result.stderr(), result.exitCode(), result.wallTimeMs()));
+    }
+
+    static String verdict(RunResult result, String expectedOutput, CaseLimits limits) {
+        // timeout reports a killed case as 124 or 137 depending on how the program died
+        boolean killedByTimeout = (result.exitCode() == 137 || result.exitCode() == 124)
+                && result.wallTimeMs() >= limits.time().toMillis();
+        if (result.timedOut() || killedByTimeout) {
+            return JudgeCaseResult.TIME_LIMIT_EXCEEDED;
+        }
+        if (result.outputTruncated()) {
+            return JudgeCaseResult.OUTPUT_LIMIT_EXCEEDED;
+        }
+        if (result.exitCode() != 0) {
+            return outOfMemory(result) ? JudgeCaseResult.MEMORY_LIMIT_EXCEEDED : JudgeCaseResult.RUNTIME_ERROR;
+        }
+        if (expectedOutput == null || normalize(expectedOutput).equals(normalize(result.stdout()))) {
+            return JudgeCaseResult.ACCEPTED;
+        }
+        return JudgeCaseResult.WRONG_ANSWER;
+    }
+
+    // A SIGKILL before the time limit is not from timeout; the OOM killer is what sends it in
+    // practice (a program killing itself with SIGKILL looks the same and is counted alike)
+    private static boolean outOfMemory(RunResult result) {
+        if (result.exitCode() == 137) {
+            return true;
+        }
+        String stderr = result.stderr() == null ? "" : result.stderr();
+        return OUT_OF_MEMORY_MESSAGES.stream().anyMatch(stderr::contains);
+    }
+
+    // Trailing whitespace on each line and trailing blank lines do not count
+    static String normalize(String output) {
+        List<String> lines = new ArrayList<>();
+        for (String line : output.split("\\R", -1)) {
+            lines.add(line.stripTrailing());
+        }
+        while (!lines.isEmpty() && lines.get(lines.size() - 1).isEmpty()) {
+            lines.remove(lines.size() - 1);
+        }
+        return String.join("\n", lines);
+    }
+
+    String caseCommand(String lang, CaseLimits limits) {
+        String run = language.isCompiled(lang) ? language.getRunCommand().get(lang) : language.getExecCommand().get(lang);
+        // output is collected in full, unbuffered stdout would only slow output-heavy cases down
+        run = run.replaceFirst("^stdbuf -o0 ", "");
+        String seconds = String.format(Locale.ROOT, "%.3f", limits.time().toMillis() / 1000.0);
+        return memoryLimit(lang, limits.memoryBytes()) + " && exec timeout -s KILL " + seconds + " " + run;
+    }
+
+    // The JVM and V8 reserve far more address space than they use, so they get a heap cap instead
+    private static String memoryLimit(String lang, long bytes) {
+        long mb = Math.max(1, bytes / (1024 * 1024));
+        return switch (lang) {
+            case "java" -> "export JAVA_TOOL_OPTIONS=-Xmx" + mb + "m";
+            case "javascript" -> "export NODE_OPTIONS=--max-old-space-size=" + mb;
+            default -> "ulimit -v " + bytes / 1024;
+        };
+    }
+
+    private int parallelism(ExecutionBackend backend, List<CaseLimits> limits) {
+        double cpus = backend.cpuLimit();
+        int parallel = cpus > 0 ? Math.max(1, (int) Math.ceil(cpus)) : parallelism;
+        long memory = backend.memoryLimit();
+        if (memory > 0) {
+            // cases share the sandbox's memory, each may use up to its own limit
+            long caseMemory = limits.stream().mapToLong(CaseLimits::memoryBytes).max().orElse(1);
+            parallel = (int) Math.max(1, Math.min(parallel, memory / caseMemory));
+        }
+        return parallel;
+    }
+
+    private List<CaseLimits> limits(JudgeRequest request) {
+        if (request.language() == null || !language.isLanguageValid(request.language().trim())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported language: " + request.language());
+        }
+        if (request.sourceCode() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "sourceCode is required");
+        }
+        if (request.testCases() == null || request.testCases().isEmpty() || request.testCases().size() > maxCases) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Between 1 and " + maxCases + " test cases are required");
+        }
+        List<CaseLimits> limits = new ArrayList<>();
+        long totalMs = 0;
+        long longestMs = 0;
+        for (JudgeRequest.TestCase testCase : request.testCases()) {
+            if (testCase.input() != null && testCase.input().getBytes(StandardCharsets.UTF_8).length > maxStdinBytes) {
+                throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "Test case input exceeds " + maxStdinBytes + " bytes");
+            }
+            long timeMs = firstNonNull(testCase.timeLimitMs(), request.timeLimitMs(), defaultTimeMs);
+            long memoryBytes = firstNonNull(testCase.memoryLimitBytes(), request.memoryLimitBytes(), maxMemoryBytes);
+            if (timeMs <= 0 || memoryBytes <= 0) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limits must be positive");
+            }
+            timeMs = Math.min(timeMs, maxTimeMs);
+            totalMs += timeMs;
+            longestMs = Math.max(longestMs, timeMs);
+            limits.add(new CaseLimits(Duration.ofMillis(timeMs), Math.min(memoryBytes, maxMemoryBytes)));
+        }
+        ExecutionBackend backend = codeExecService.backendFor(request.language());
+        long casesMs = totalMs / parallelism(backend, limits);
+        if (casesMs > maxTotalMs) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Test cases exceed the total time budget of " + maxTotalMs + " ms");
+        }
+        // the sandbox has to outlive the slowest possible judge: compile, then cases in parallel,
+        // the last one of which may start just before the others finish
+        long lifetimeMs = backend.lifetime().toMillis();
+        long compileMs = language.isCompiled(request.language().trim()) ? compileTime.toMillis() : 0;
+        if (lifetimeMs > 0 && compileMs + casesMs + longestMs + KILL_GRACE.toMillis() > lifetimeMs) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Test cases exceed the sandbox lifetime of " + lifetimeMs + " ms including compilation");
+        }
+        return limits;
+    }
+
+    private static long firstNonNull(Long value, Long fallback, long defaultValue) {
+        if (value != null) {
+            return value;
+        }
+        return fallback != null ? fallback : defaultValue;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.sandbox_backend.services;
+
+import com.example.sandbox_backend.util.TokenBucket;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token buckets per email and per client IP in front of password hashing. Idle buckets are
+ * dropped after a while and the number of tracked keys is bounded.
+ */
+@Service
+public class LoginRateLimiter {
+
+    private final Cache<String, TokenBucket> emailBuckets;
+    private final Cache<String, TokenBucket> ipBuckets;
+    private final int emailCapacity;
+    private final int emailRefillPerMinute;
+    private final int ipCapacity;
+    private final int ipRefillPerMinute;
+    private final MeterRegistry meterRegistry;
+
+    public LoginRateLimiter(MeterRegistry meterRegistry,
+                            @Value("${auth.rate-limit.email.capacity:5}") int emailCapacity,
+                            @Value("${auth.rate-limit.email.refill-per-minute:5}") int emailRefillPerMinute,
+                            @Value("${auth.rate-limit.ip.capacity:20}") int ipCapacity,
+                            @Value("${auth.rate-limit.ip.refill-per-minute:20}") int ipRefillPerMinute,
+                            @Value("${auth.rate-limit.max-keys:100000}") long maxKeys) {
+        this.meterRegistry = meterRegistry;
+        this.emailCapacity = emailCapacity;
+        this.emailRefillPerMinute = emailRefillPerMinute;
+        this.ipCapacity = ipCapacity;
+        this.ipRefillPerMinute = ipRefillPerMinute;
+        this.emailBuckets = buckets(maxKeys);
+        this.ipBuckets = buckets(maxKeys);
+    }
+
+    /**
+     * Takes a token from the client's IP bucket and, when given, from the email's bucket.
+     */
+    public boolean tryAcquire(String email, String clientIp) {
+        if (!bucket(ipBuckets, clientIp, ipCapacity, ipRefillPerMinute).tryConsume()) {
+            rejected("ip");
+            return false;
+        }
+        if (email != null && !bucket(emailBuckets, email.toLowerCase(Locale.ROOT), emailCapacity, emailRefillPerMinute).tryConsume()) {
+            rejected("email");
+            return false;
+        }
+        return true;
+    }
+
+    private void rejected(String reason) {
+        Counter.builder("auth.rate_limit.rejected")
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private static TokenBucket bucket(Cache<String, TokenBucket> buckets, String key, int capacity, int refillPerMinute) {
+        try {
+            return buckets.get(key, () -> new TokenBucket(capacity, refillPerMinute));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Cache<String, TokenBucket> buckets(long maxKeys) {
+        return CacheBuilder.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(1, TimeUnit.HOURS)
+                .build();
+    }
+}
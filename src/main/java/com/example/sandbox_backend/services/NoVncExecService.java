@@ -2,38 +2,55 @@ package com.example.sandbox_backend.services;
 
 import com.example.sandbox_backend.entities.CustomUserDetails;
 import com.example.sandbox_backend.util.NoVncUserDetails;
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.core.context.ReactiveSecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
+import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
-import java.util.regex.Pattern;
+import java.util.concurrent.Semaphore;
 
 @Service
 public class NoVncExecService {
     private static final Logger log = LoggerFactory.getLogger(NoVncExecService.class);
     private static final String CONTAINER_NAME = "ubuntu-novnc";
-    private static final String CONTAINER_ID_REGEX = "^[0-9a-f]{64}$";
+    private static final long CONTAINER_MEMORY_BYTES = 1024L * 1024 * 1024;
 
     private final DynamicRouteService dynamicRouteService;
+    private final DockerClient dockerClient;
+    private final DockerHealthMonitor dockerHealth;
+    private final ContainerReaper reaper;
+    private final ExecMetrics execMetrics;
     private final ConcurrentHashMap<String, NoVncUserDetails> user2noVncMap;
-    private final ConcurrentHashMap<String, Lock> userLocks = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Semaphore> userLocks = new ConcurrentHashMap<>();
 
     public NoVncExecService(DynamicRouteService dynamicRouteService,
+                            DockerClient dockerClient,
+                            DockerHealthMonitor dockerHealth,
+                            ContainerReaper reaper,
+                            ExecMetrics execMetrics,
+                            MeterRegistry meterRegistry,
                             ConcurrentHashMap<String, NoVncUserDetails> user2noVncMap) {
         this.dynamicRouteService = dynamicRouteService;
+        this.dockerClient = dockerClient;
+        this.dockerHealth = dockerHealth;
+        this.reaper = reaper;
+        this.execMetrics = execMetrics;
         this.user2noVncMap = user2noVncMap;
+        Gauge.builder("sandbox.novnc.sessions.active", user2noVncMap, Map::size).register(meterRegistry);
     }
 
     public Flux<String> startExec() {
@@ -41,43 +58,25 @@ public class NoVncExecService {
                 .flatMapMany(userId -> {
                     String userKey = userId.toString();
 
-                    Lock userLock = userLocks.computeIfAbsent(userKey, k -> new ReentrantLock());
-
-                    return Mono.fromCallable(() -> {
-                        userLock.lock();
-                        try {
-                            if (!isDockerAvailable()) {
-                                throw new RuntimeException("Docker not available");
-                            }
-
-                            // destroy previous container if exists
-                            cleanupExistingContainer(userKey);
-
-                            // Create new container
-                            String containerId = createContainer();
-                            log.info("Created new container {} for user {}", containerId, userKey);
-
-                            // Get container IP and create internal URL
-                            String ip = getContainerIp(containerId);
-                            URL internalUrl = new URL("http", ip, 6080, "/vnc.html");
-                            log.info("Generated internal VNC URL: {}", internalUrl);
-
-                            // Add dynamic route
-                            RouteDefinition routeDefinition = dynamicRouteService.addUserRoute(
-                                    userKey, internalUrl.toString());
-
-                            // Save container details
-                            URL proxyUrl = routeDefinition.getUri().toURL();
-                            user2noVncMap.put(userKey, new NoVncUserDetails(containerId, proxyUrl));
-
-                            return proxyUrl.toString();
-                        } catch (Exception e) {
-                            log.error("Error in startExec for user {}", userKey, e);
-                            throw new RuntimeException("Failed to start container", e);
-                        } finally {
-                            userLock.unlock();
-                        }
-                    }).flux();
+                    // One container start per user at a time, a second request is turned away instead of
+                    // blocking a thread; released from whichever thread finishes
+                    Semaphore userLock = userLocks.computeIfAbsent(userKey, k -> new Semaphore(1));
+
+                    return Mono.using(
+                                    () -> {
+                                        if (!userLock.tryAcquire()) {
+                                            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS,
+                                                    "A desktop is already starting for this user");
+                                        }
+                                        return userLock;
+                                    },
+                                    lock -> execMetrics.time(startContainerForUser(userKey), ExecMetrics.TOTAL, ExecMetrics.NOVNC),
+                                    Semaphore::release)
+                            .onErrorMap(e -> !(e instanceof ResponseStatusException), e -> {
+                                log.error("Error in startExec for user {}", userKey, e);
+                                return new RuntimeException("Failed to start container", e);
+                            })
+                            .flux();
                 })
                 .onErrorResume(e -> {
                     log.error("Error in startExec", e);
@@ -85,71 +84,81 @@ public class NoVncExecService {
                 });
     }
 
-    private void cleanupExistingContainer(String userKey) {
-        NoVncUserDetails existingDetails = user2noVncMap.remove(userKey);
-        if (existingDetails != null) {
-            log.info("Cleaning up existing container {} for user: {}",
-                    existingDetails.getContainerId(), userKey);
-            destroyContainer(existingDetails.getContainerId());
-            dynamicRouteService.removeUserRoute(userKey);
-        }
+    private Mono<String> startContainerForUser(String userKey) {
+        return dockerHealth.isAvailable()
+                .flatMap(dockerAvailable -> {
+                    if (!dockerAvailable) {
+                        return Mono.error(new RuntimeException("Docker not available"));
+                    }
+
+                    // destroy previous container if exists
+                    return cleanupExistingContainer(userKey)
+                            // Create new container
+                            .then(execMetrics.time(createContainer(userKey), ExecMetrics.CREATE, ExecMetrics.NOVNC))
+                            .flatMap(containerId -> {
+                                log.info("Created new container {} for user {}", containerId, userKey);
+                                // Get container IP and create internal URL
+                                return execMetrics.time(getContainerIp(containerId), ExecMetrics.NETWORK, ExecMetrics.NOVNC)
+                                        .map(ip -> registerRoute(userKey, containerId, ip));
+                            });
+                });
     }
 
-    private String createContainer() throws Exception {
-        ProcessBuilder processBuilder = new ProcessBuilder(
-                "sudo", "docker", "run",
-                "--rm", "-d",
-                "--memory", "1024m",
-                "--ulimit", "cpu=600",
-                CONTAINER_NAME
-        );
-        Process process = processBuilder.start();
-        String containerId = new String(process.getInputStream().readAllBytes()).trim();
-        int exitCode = process.waitFor();
+    private String registerRoute(String userKey, String containerId, String ip) {
+        try {
+            URL internalUrl = new URL("http", ip, 6080, "/vnc.html");
+            log.info("Generated internal VNC URL: {}", internalUrl);
 
-        if (exitCode != 0 || !isValidContainerId(containerId)) {
-            throw new RuntimeException("Error creating container");
-        }
-        return containerId;
-    }
+            // Add dynamic route
+            RouteDefinition routeDefinition = dynamicRouteService.addUserRoute(
+                    userKey, internalUrl.toString());
 
-    private boolean isValidContainerId(String containerId) {
-        return Pattern.matches(CONTAINER_ID_REGEX, containerId);
+            // Save container details
+            URL proxyUrl = routeDefinition.getUri().toURL();
+            user2noVncMap.put(userKey, new NoVncUserDetails(containerId, proxyUrl));
+
+            return proxyUrl.toString();
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException("Invalid VNC URL for container " + containerId, e);
+        }
     }
 
-    private boolean isDockerAvailable() {
-        try {
-            ProcessBuilder pb = new ProcessBuilder("docker", "info");
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-            int exitCode = process.waitFor();
-            return exitCode == 0;
-        } catch (Exception e) {
-            log.error("Docker availability check failed", e);
-            return false;
+    private Mono<Void> cleanupExistingContainer(String userKey) {
+        NoVncUserDetails existingDetails = user2noVncMap.remove(userKey);
+        if (existingDetails == null) {
+            return Mono.empty();
         }
+        log.info("Cleaning up existing container {} for user: {}",
+                existingDetails.getContainerId(), userKey);
+        dynamicRouteService.removeUserRoute(userKey);
+        return destroyContainer(existingDetails.getContainerId());
     }
 
-    private String getContainerIp(String containerId) throws IOException, InterruptedException {
-        ProcessBuilder pb = new ProcessBuilder(
-                "docker", "inspect", "-f",
-                "{{range .NetworkSettings.Networks}}{{.IPAddress}}{{end}}",
-                containerId
+    private Mono<String> createContainer(String userKey) {
+        Map<String, Object> hostConfig = Map.of(
+                "AutoRemove", true,
+                "Memory", CONTAINER_MEMORY_BYTES,
+                "Ulimits", List.of(Map.of("Name", "cpu", "Soft", 600, "Hard", 600))
         );
+        return dockerClient.runContainer(Map.of(
+                        "Image", CONTAINER_NAME,
+                        "Labels", reaper.labels(userKey),
+                        "HostConfig", hostConfig))
+                .doOnNext(reaper::track)
+                .onErrorMap(e -> new RuntimeException("Error creating container", e));
+    }
 
-        pb.redirectErrorStream(true);
-        Process process = pb.start();
-
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String ip = reader.readLine();
-            process.waitFor();
-
-            if (ip == null || ip.isEmpty()) {
-                throw new IllegalStateException("No IP found for container " + containerId);
-            }
-
-            return ip.trim();
-        }
+    private Mono<String> getContainerIp(String containerId) {
+        return dockerClient.inspectContainer(containerId)
+                .flatMap(json -> {
+                    for (JsonNode network : json.path("NetworkSettings").path("Networks")) {
+                        String ip = network.path("IPAddress").asText();
+                        if (!ip.isEmpty()) {
+                            return Mono.just(ip);
+                        }
+                    }
+                    return Mono.error(new IllegalStateException("No IP found for container " + containerId));
+                });
     }
 
     private Mono<UUID> getCurrentUserId() {
@@ -159,24 +168,7 @@ public class NoVncExecService {
                 .map(principal -> ((CustomUserDetails) principal).getId());
     }
 
-    private void destroyContainer(String containerId) {
-        try {
-            ProcessBuilder pb = new ProcessBuilder("sudo", "docker", "rm", "-f", containerId);
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                reader.lines().forEach(line -> log.debug("docker rm output: {}", line));
-            }
-
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                log.error("Failed to destroy container {}", containerId);
-            } else {
-                log.info("Successfully destroyed container {}", containerId);
-            }
-        } catch (Exception e) {
-            log.error("Error destroying container", e);
-        }
+    private Mono<Void> destroyContainer(String containerId) {
+        return Mono.fromRunnable(() -> reaper.destroy(containerId));
     }
 }
\ No newline at end of file
@@ -0,0 +1,185 @@
+package com.example.sandbox_backend.services;
+
+import com.example.sandbox_backend.entities.ProfileImage;
+import com.example.sandbox_backend.repositories.ProfileImageRepository;
+import com.example.sandbox_backend.util.ImageResizer;
+import com.example.sandbox_backend.util.ImageTypeSniffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Stores profile images outside the users table, addressed by the SHA-256 of their content.
+ * The hash doubles as ETag and as the immutable URL clients fetch the image from.
+ * Square thumbnails in {@link #THUMBNAIL_SIZES} are rendered on upload and stored as variants
+ * under the original's hash; the original is kept for re-rendering.
+ */
+@Service
+public class ProfileImageService {
+
+    private static final Logger log = LoggerFactory.getLogger(ProfileImageService.class);
+    public static final String IMAGE_PATH = "/api/v1/profile/image/";
+    public static final int[] THUMBNAIL_SIZES = {32, 128, 512};
+
+    private final ProfileImageRepository profileImageRepository;
+    private final Scheduler imageScheduler;
+    private final int maxBytes;
+
+    /**
+     * An uploaded image and the type sniffed from its content.
+     */
+    public record Upload(byte[] data, MediaType contentType) {
+    }
+
+    public ProfileImageService(ProfileImageRepository profileImageRepository,
+                               @Qualifier("imageScheduler") Scheduler imageScheduler,
+                               @Value("${profile.image.max-bytes:10485760}") int maxBytes) {
+        this.profileImageRepository = profileImageRepository;
+        this.imageScheduler = imageScheduler;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Reads an uploaded image. Non-images are rejected on the first chunk and oversized uploads
+     * as soon as the limit is crossed, without reading the rest of the body.
+     */
+    public Mono<Upload> readUpload(Flux<DataBuffer> content) {
+        Flux<DataBuffer> checked = content.switchOnFirst((first, flux) -> {
+            if (first.hasValue()
+                    && first.get().readableByteCount() >= ImageTypeSniffer.HEADER_BYTES
+                    && ImageTypeSniffer.sniff(first.get()).isEmpty()) {
+                return Flux.error(unsupportedType());
+            }
+            return flux;
+        });
+        return aggregate(checked, maxBytes)
+                .onErrorMap(DataBufferLimitException.class, e -> tooLarge())
+                .flatMap(this::toUpload);
+    }
+
+    /**
+     * Checks an image that arrived in one piece (base64 in JSON).
+     */
+    public Mono<Upload> readUpload(byte[] data) {
+        if (data.length > maxBytes) {
+            return Mono.error(tooLarge());
+        }
+        return toUpload(data);
+    }
+
+    /**
+     * Joins the buffers into one pooled buffer (failing once {@code maxBytes} is exceeded) and
+     * copies it out exactly once.
+     */
+    public static Mono<byte[]> aggregate(Flux<DataBuffer> content, int maxBytes) {
+        return DataBufferUtils.join(content, maxBytes)
+                .map(joined -> {
+                    try {
+                        byte[] bytes = new byte[joined.readableByteCount()];
+                        joined.read(bytes);
+                        return bytes;
+                    } finally {
+                        DataBufferUtils.release(joined);
+                    }
+                })
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    private Mono<Upload> toUpload(byte[] data) {
+        return ImageTypeSniffer.sniff(data)
+                .map(type -> Mono.just(new Upload(data, type)))
+                .orElseGet(() -> Mono.error(unsupportedType()));
+    }
+
+    private ResponseStatusException tooLarge() {
+        return new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                "Profile image exceeds " + maxBytes + " bytes");
+    }
+
+    private static ResponseStatusException unsupportedType() {
+        return new ResponseStatusException(HttpStatus.UNSUPPORTED_MEDIA_TYPE,
+                "Profile image must be PNG, JPEG, GIF or WebP");
+    }
+
+    /**
+     * Stores the user's original image plus its thumbnails and emits the original's hash.
+     * Thumbnail failures (undecodable format, full render queue) only leave the variants missing;
+     * the image endpoint then falls back to the original.
+     */
+    public Mono<String> store(UUID userId, byte[] data, String contentType) {
+        String hash = sha256(data);
+        return save(userId, ProfileImage.ORIGINAL, hash, data, contentType)
+                .then(storeThumbnails(userId, hash, data))
+                .thenReturn(hash);
+    }
+
+    private Mono<Void> storeThumbnails(UUID userId, String hash, byte[] data) {
+        return Mono.fromCallable(() -> ImageResizer.thumbnails(data, THUMBNAIL_SIZES))
+                .subscribeOn(imageScheduler)
+                .flatMapIterable(Map::entrySet)
+                .concatMap(entry -> save(userId, String.valueOf(entry.getKey()), hash,
+                        entry.getValue(), MediaType.IMAGE_PNG_VALUE))
+                .onErrorResume(e -> {
+                    log.warn("Could not render thumbnails for user {}: {}", userId, e.toString());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    // Insert or replace the user's row for this variant
+    private Mono<ProfileImage> save(UUID userId, String variant, String hash, byte[] data, String contentType) {
+        return profileImageRepository.findByUserIdAndVariant(userId, variant)
+                .defaultIfEmpty(ProfileImage.builder()
+                        .userId(userId)
+                        .variant(variant)
+                        .build())
+                .flatMap(image -> {
+                    image.setHash(hash);
+                    image.setContentType(contentType);
+                    image.setData(data);
+                    return profileImageRepository.save(image);
+                });
+    }
+
+    public static boolean isThumbnailSize(int size) {
+        for (int thumbnailSize : THUMBNAIL_SIZES) {
+            if (thumbnailSize == size) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Mono<ProfileImage> find(String hash, String variant) {
+        return profileImageRepository.findFirstByHashAndVariant(hash, variant);
+    }
+
+    public static String imageUrl(String hash) {
+        return hash == null ? null : IMAGE_PATH + hash;
+    }
+
+    static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
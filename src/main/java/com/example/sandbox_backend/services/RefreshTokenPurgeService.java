@@ -0,0 +1,78 @@
+package com.example.sandbox_backend.services;
+
+import com.example.sandbox_backend.repositories.RefreshTokenRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deletes expired refresh tokens in batches of {@code auth.refresh-token.purge-batch-size},
+ * at most {@code purge-max-batches} per run, so the table does not grow with every login.
+ */
+@Service
+public class RefreshTokenPurgeService {
+
+    private static final Logger log = LoggerFactory.getLogger(RefreshTokenPurgeService.class);
+
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final int batchSize;
+    private final int maxBatches;
+    private final Counter purged;
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public RefreshTokenPurgeService(RefreshTokenRepository refreshTokenRepository,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${auth.refresh-token.purge-batch-size:1000}") int batchSize,
+                                    @Value("${auth.refresh-token.purge-max-batches:100}") int maxBatches) {
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.batchSize = batchSize;
+        this.maxBatches = maxBatches;
+        this.purged = Counter.builder("auth.refresh_tokens.purged").register(meterRegistry);
+        Gauge.builder("auth.refresh_tokens.rows", rows, AtomicLong::get).register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${auth.refresh-token.purge-interval-ms:600000}")
+    public void purgeExpired() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        purgeBatches(now, 0, 0)
+                .flatMap(total -> refreshTokenRepository.count()
+                        .doOnNext(rows::set)
+                        .thenReturn(total))
+                .doFinally(signalType -> running.set(false))
+                .subscribe(
+                        total -> {
+                            if (total > 0) {
+                                log.info("Purged {} expired refresh tokens", total);
+                            }
+                        },
+                        e -> log.warn("Refresh token purge failed: {}", e.getMessage())
+                );
+    }
+
+    // Keeps deleting while full batches come back
+    private Mono<Long> purgeBatches(long now, int batch, long total) {
+        if (batch >= maxBatches) {
+            return Mono.just(total);
+        }
+        return refreshTokenRepository.deleteExpired(now, batchSize)
+                .flatMap(deleted -> {
+                    purged.increment(deleted);
+                    return deleted < batchSize
+                            ? Mono.just(total + deleted)
+                            : purgeBatches(now, batch + 1, total + deleted);
+                });
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.sandbox_backend.services;
+
+import com.example.sandbox_backend.entities.UserSummary;
+import com.example.sandbox_backend.repositories.UserRepository;
+import com.example.sandbox_backend.util.JwtUtil;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded cache of the slim user records the authentication filter needs, so authenticated
+ * requests do not load the user row. Entries are invalidated when the profile changes and
+ * expire after {@code auth.user-cache.ttl-seconds} as a bound on staleness.
+ * Hit rates of this cache and of the verified-token cache are exported as cache.gets{cache=...}.
+ */
+@Service
+public class UserDetailsCache {
+
+    private final UserRepository userRepository;
+    private final Cache<UUID, UserSummary> users;
+
+    public UserDetailsCache(UserRepository userRepository,
+                            JwtUtil jwtUtil,
+                            MeterRegistry meterRegistry,
+                            @Value("${auth.user-cache.max-size:10000}") long maxSize,
+                            @Value("${auth.user-cache.ttl-seconds:300}") long ttlSeconds) {
+        this.userRepository = userRepository;
+        this.users = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        GuavaCacheMetrics.monitor(meterRegistry, users, "auth.users");
+        GuavaCacheMetrics.monitor(meterRegistry, jwtUtil.getVerifiedTokenCache(), "auth.tokens");
+    }
+
+    public Mono<UserSummary> get(UUID userId) {
+        return Mono.defer(() -> {
+            UserSummary cached = users.getIfPresent(userId);
+            if (cached != null) {
+                return Mono.just(cached);
+            }
+            return userRepository.findSummaryById(userId)
+                    .doOnNext(summary -> users.put(userId, summary));
+        });
+    }
+
+    public void invalidate(UUID userId) {
+        users.invalidate(userId);
+    }
+}
@@ -18,9 +18,15 @@ import java.util.Base64;
 public class UserProfileService {
 
     private final UserRepository userRepository;
+    private final UserDetailsCache userDetailsCache;
+    private final ProfileImageService profileImageService;
 
-    public UserProfileService(UserRepository userRepository) {
+    public UserProfileService(UserRepository userRepository,
+                              UserDetailsCache userDetailsCache,
+                              ProfileImageService profileImageService) {
         this.userRepository = userRepository;
+        this.userDetailsCache = userDetailsCache;
+        this.profileImageService = profileImageService;
     }
 
     // Get current user's profile
@@ -69,44 +75,35 @@ public class UserProfileService {
 
         Mono<Void> imageMono;
         if (profileImage != null) {
-            imageMono = saveProfileImage(profileImage).map(bytes -> {
-                user.setProfileImage(bytes);
-                return bytes;
-            }).then();
+            imageMono = profileImageService.readUpload(profileImage.content())
+                    .flatMap(upload -> storeImage(user, upload));
         } else if (dto.getProfileImage() != null) { // Base64 string from JSON
+            byte[] bytes;
             try {
-                user.setProfileImage(Base64.getDecoder().decode(dto.getProfileImage()));
+                bytes = Base64.getDecoder().decode(dto.getProfileImage());
             } catch (IllegalArgumentException e) {
                 return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid Base64 profile image"));
             }
-            imageMono = Mono.empty();
+            imageMono = profileImageService.readUpload(bytes)
+                    .flatMap(upload -> storeImage(user, upload));
         } else {
             imageMono = Mono.empty();
         }
 
-        return imageMono.then(userRepository.save(user).map(this::toDto));
-    }
-
-    // Convert FilePart to byte[]
-    private Mono<byte[]> saveProfileImage(FilePart filePart) {
-        return filePart.content()
-                .map(dataBuffer -> {
-                    byte[] bytes = new byte[dataBuffer.readableByteCount()];
-                    dataBuffer.read(bytes);
-                    return bytes;
-                })
-                .reduce(this::concatBytes);
+        return imageMono.then(userRepository.save(user)
+                .doOnNext(saved -> userDetailsCache.invalidate(saved.getId()))
+                .map(this::toDto));
     }
 
-    private byte[] concatBytes(byte[] a, byte[] b) {
-        byte[] result = new byte[a.length + b.length];
-        System.arraycopy(a, 0, result, 0, a.length);
-        System.arraycopy(b, 0, result, a.length, b.length);
-        return result;
+    private Mono<Void> storeImage(User user, ProfileImageService.Upload upload) {
+        return profileImageService.store(user.getId(), upload.data(), upload.contentType().toString())
+                .doOnNext(user::setProfileImageHash)
+                .then();
     }
 
     private UserProfileRequestDTO toDto(User user) {
-        String base64Image = user.getProfileImage() != null ? Base64.getEncoder().encodeToString(user.getProfileImage()) : null;
-        return new UserProfileRequestDTO(user.getUsername(),user.getFullName(), user.getEmail(), user.getBio(), base64Image);
+        String hash = user.getProfileImageHash();
+        return new UserProfileRequestDTO(user.getUsername(), user.getFullName(), user.getEmail(), user.getBio(),
+                null, hash, ProfileImageService.imageUrl(hash));
     }
 }
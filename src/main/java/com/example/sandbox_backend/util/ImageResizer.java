@@ -0,0 +1,96 @@
+package com.example.sandbox_backend.util;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Renders square avatar thumbnails (center crop, then downscale) as PNG. CPU bound; callers
+ * run it off the event loop.
+ */
+public final class ImageResizer {
+
+    // Refuse to decode images whose pixel buffer alone would take hundreds of MB
+    private static final long MAX_PIXELS = 40_000_000L;
+
+    private ImageResizer() {
+    }
+
+    /**
+     * Returns one PNG per requested edge length, or an empty map when the format cannot be
+     * decoded (e.g. WebP without an ImageIO plugin). Images are never upscaled.
+     */
+    public static Map<Integer, byte[]> thumbnails(byte[] data, int... sizes) throws IOException {
+        BufferedImage source = read(data);
+        Map<Integer, byte[]> result = new LinkedHashMap<>();
+        if (source == null) {
+            return result;
+        }
+
+        int edge = Math.min(source.getWidth(), source.getHeight());
+        BufferedImage square = source.getSubimage(
+                (source.getWidth() - edge) / 2, (source.getHeight() - edge) / 2, edge, edge);
+        for (int size : sizes) {
+            result.put(size, toPng(scale(square, Math.min(size, edge))));
+        }
+        return result;
+    }
+
+    private static BufferedImage read(byte[] data) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(data))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                if ((long) reader.getWidth(0) * reader.getHeight(0) > MAX_PIXELS) {
+                    return null;
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // Halve repeatedly, then one bilinear step to the target; keeps quality close to area averaging
+    private static BufferedImage scale(BufferedImage image, int target) {
+        BufferedImage current = image;
+        int edge = image.getWidth();
+        do {
+            edge = Math.max(target, edge / 2);
+            current = draw(current, edge);
+        } while (edge > target);
+        return current;
+    }
+
+    private static BufferedImage draw(BufferedImage source, int edge) {
+        BufferedImage target = new BufferedImage(edge, edge, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, edge, edge, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    private static byte[] toPng(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.sandbox_backend.util;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.MediaType;
+
+import java.util.Optional;
+
+/**
+ * Detects the image type from its leading magic bytes instead of trusting the client's
+ * Content-Type. Only the formats accepted as profile images are recognised.
+ */
+public final class ImageTypeSniffer {
+
+    /** Bytes needed to tell every supported format apart. */
+    public static final int HEADER_BYTES = 12;
+
+    private static final MediaType IMAGE_WEBP = MediaType.parseMediaType("image/webp");
+
+    private ImageTypeSniffer() {
+    }
+
+    public static Optional<MediaType> sniff(byte[] data) {
+        return sniff(data, Math.min(data.length, HEADER_BYTES));
+    }
+
+    /**
+     * Looks at the first readable bytes without moving the buffer's read position.
+     */
+    public static Optional<MediaType> sniff(DataBuffer buffer) {
+        int length = Math.min(buffer.readableByteCount(), HEADER_BYTES);
+        byte[] header = new byte[length];
+        int start = buffer.readPosition();
+        for (int i = 0; i < length; i++) {
+            header[i] = buffer.getByte(start + i);
+        }
+        return sniff(header, length);
+    }
+
+    private static Optional<MediaType> sniff(byte[] h, int length) {
+        if (length >= 8 && (h[0] & 0xff) == 0x89 && h[1] == 'P' && h[2] == 'N' && h[3] == 'G'
+                && h[4] == 0x0d && h[5] == 0x0a && h[6] == 0x1a && h[7] == 0x0a) {
+            return Optional.of(MediaType.IMAGE_PNG);
+        }
+        if (length >= 3 && (h[0] & 0xff) == 0xff && (h[1] & 0xff) == 0xd8 && (h[2] & 0xff) == 0xff) {
+            return Optional.of(MediaType.IMAGE_JPEG);
+        }
+        if (length >= 6 && h[0] == 'G' && h[1] == 'I' && h[2] == 'F' && h[3] == '8'
+                && (h[4] == '7' || h[4] == '9') && h[5] == 'a') {
+            return Optional.of(MediaType.IMAGE_GIF);
+        }
+        if (length >= 12 && h[0] == 'R' && h[1] == 'I' && h[2] == 'F' && h[3] == 'F'
+                && h[8] == 'W' && h[9] == 'E' && h[10] == 'B' && h[11] == 'P') {
+            return Optional.of(IMAGE_WEBP);
+        }
+        return Optional.empty();
+    }
+}
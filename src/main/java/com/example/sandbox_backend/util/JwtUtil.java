@@ -1,5 +1,7 @@
 package com.example.sandbox_backend.util;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.beans.factory.annotation.Value;
@@ -9,22 +11,41 @@ import javax.crypto.SecretKey;
 import java.time.Instant;
 import java.util.Date;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class JwtUtil {
     private final SecretKey key;
     private final long accessMillis;
     private final long refreshMillis;
+    // Thread-safe once built, so one instance serves every request
+    private final JwtParser parser;
+    // token -> verified claims; entries never outlive the token itself (checked on read)
+    private final Cache<String, VerifiedToken> verifiedTokens;
+
+    /**
+     * Subject and roles of a token whose signature and expiry have been checked.
+     */
+    public record VerifiedToken(UUID userId, List<String> roles, Instant expiresAt) {
+    }
 
     public JwtUtil(
             @Value("${jwt.secret}") String secret,
             @Value("${jwt.access-token-minutes}") long accessMinutes,
-            @Value("${jwt.refresh-token-days}") long refreshDays
+            @Value("${jwt.refresh-token-days}") long refreshDays,
+            @Value("${jwt.cache.max-size:10000}") long cacheMaxSize
     ) {
         this.key = Keys.hmacShaKeyFor(secret.getBytes());
         this.accessMillis = accessMinutes * 60 * 1000;
         this.refreshMillis = refreshDays * 24 * 60 * 60 * 1000;
+        this.parser = Jwts.parserBuilder().setSigningKey(key).build();
+        this.verifiedTokens = CacheBuilder.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(accessMillis, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
     }
 
     public String generateAccessToken(String userId, List<String> roles) {
@@ -40,7 +61,9 @@ public class JwtUtil {
 
     public String generateRefreshToken(String userId, List<String> roles){
         Instant now = Instant.now();
+        // Random id keeps tokens issued within the same second unique
         return Jwts.builder()
+                .setId(UUID.randomUUID().toString())
                 .setSubject(userId)
                 .claim("roles", roles)
                 .setIssuedAt(Date.from(now))
@@ -49,24 +72,65 @@ public class JwtUtil {
                 .compact();
     }
 
-    public boolean validateAccessToken(String token) {
+    /**
+     * Verifies the token once and returns its claims, or empty when the signature, expiry or
+     * format is invalid.
+     */
+    public Optional<Claims> parseClaims(String token) {
         try {
-            Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token);
-            return true;
-        } catch (JwtException e) {
-            return false;
+            return Optional.of(parser.parseClaimsJws(token).getBody());
+        } catch (JwtException | IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Like {@link #parseClaims(String)}, but served from a bounded cache so repeated requests
+     * with the same token skip the HMAC check. Invalid tokens are never cached.
+     */
+    public Optional<VerifiedToken> verifyAccessToken(String token) {
+        VerifiedToken cached = verifiedTokens.getIfPresent(token);
+        if (cached != null) {
+            if (cached.expiresAt().isAfter(Instant.now())) {
+                return Optional.of(cached);
+            }
+            verifiedTokens.invalidate(token);
+            return Optional.empty();
         }
+
+        Optional<VerifiedToken> verified = parseClaims(token).flatMap(JwtUtil::toVerifiedToken);
+        verified.ifPresent(v -> verifiedTokens.put(token, v));
+        return verified;
+    }
+
+    public boolean validateAccessToken(String token) {
+        return verifyAccessToken(token).isPresent();
     }
 
     public UUID getUserId(String token) {
-        String subject = Jwts.parserBuilder()
-                .setSigningKey(key)
-                .build()
-                .parseClaimsJws(token)
-                .getBody()
-                .getSubject();
-
-        return UUID.fromString(subject);
+        return verifyAccessToken(token)
+                .map(VerifiedToken::userId)
+                .orElseThrow(() -> new JwtException("Invalid token"));
+    }
+
+    public Cache<String, VerifiedToken> getVerifiedTokenCache() {
+        return verifiedTokens;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Optional<VerifiedToken> toVerifiedToken(Claims claims) {
+        try {
+            UUID userId = UUID.fromString(claims.getSubject());
+            List<String> roles = claims.get("roles", List.class);
+            Date expiration = claims.getExpiration();
+            if (expiration == null) {
+                return Optional.empty();
+            }
+            return Optional.of(new VerifiedToken(userId, roles == null ? List.of() : List.copyOf(roles),
+                    expiration.toInstant()));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
     }
 
 
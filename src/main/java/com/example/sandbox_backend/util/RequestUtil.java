@@ -0,0 +1,53 @@
+package com.example.sandbox_backend.util;
+
+import com.example.sandbox_backend.entities.CustomUserDetails;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.util.UUID;
+
+/**
+ * Who a request comes from: the client address for per-IP limits, and the key runs are
+ * accounted under, the signed-in user or else the address.
+ */
+public final class RequestUtil {
+
+    private RequestUtil() {
+    }
+
+    /**
+     * The peer address, which is the client's as sent by the proxy when
+     * {@code server.forward-headers-strategy=framework} applies the forwarded headers.
+     */
+    public static String clientIp(ServerHttpRequest request) {
+        return clientIp(request.getRemoteAddress());
+    }
+
+    public static String clientIp(InetSocketAddress address) {
+        if (address == null) {
+            return "unknown";
+        }
+        return address.getAddress() != null ? address.getAddress().getHostAddress() : address.getHostString();
+    }
+
+    public static String userKey(UUID userId) {
+        return "user:" + userId;
+    }
+
+    public static String ipKey(String ip) {
+        return "ip:" + ip;
+    }
+
+    /**
+     * Key of the authenticated user of the current request, the address key when anonymous.
+     */
+    public static Mono<String> currentUserKey(String ip) {
+        return ReactiveSecurityContextHolder.getContext()
+                .map(securityContext -> securityContext.getAuthentication().getPrincipal())
+                .filter(principal -> principal instanceof CustomUserDetails)
+                .map(principal -> userKey(((CustomUserDetails) principal).getId()))
+                .defaultIfEmpty(ipKey(ip));
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.sandbox_backend.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public final class TarUtil {
+
+    private static final int BLOCK_SIZE = 512;
+
+    private TarUtil() {
+    }
+
+    /**
+     * Builds a ustar archive containing one regular file. The content is UTF-8 encoded
+     * straight into the (pooled) buffer; the caller owns the returned buffer.
+     */
+    public static ByteBuf singleFileArchive(ByteBufAllocator allocator, String fileName, CharSequence content, int uid) {
+        int size = ByteBufUtil.utf8Bytes(content);
+        int padding = (BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE;
+        ByteBuf buf = allocator.buffer(BLOCK_SIZE + size + padding + 2 * BLOCK_SIZE);
+        try {
+            buf.writeBytes(header(fileName, size, uid));
+            ByteBufUtil.writeUtf8(buf, content);
+            // pad the entry, then two empty blocks mark the end of the archive
+            buf.writeZero(padding + 2 * BLOCK_SIZE);
+            return buf;
+        } catch (RuntimeException e) {
+            buf.release();
+            throw e;
+        }
+    }
+
+    private static byte[] header(String fileName, long size, int uid) {
+        byte[] header = new byte[BLOCK_SIZE];
+        put(header, 0, 100, fileName);
+        putOctal(header, 100, 8, 0644);
+        putOctal(header, 108, 8, uid);
+        putOctal(header, 116, 8, uid);
+        putOctal(header, 124, 12, size);
+        putOctal(header, 136, 12, System.currentTimeMillis() / 1000);
+        header[156] = '0'; // regular file
+        put(header, 257, 6, "ustar");
+        put(header, 263, 2, "00");
+
+        // checksum is computed with the checksum field itself filled with spaces
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        put(header, 148, 8, String.format("%06o", checksum));
+        header[154] = 0;
+        header[155] = ' ';
+        return header;
+    }
+
+    private static void putOctal(byte[] header, int offset, int length, long value) {
+        // zero padded, leaving the last byte as NUL terminator
+        put(header, offset, length - 1, String.format("%0" + (length - 1) + "o", value));
+    }
+
+    private static void put(byte[] header, int offset, int length, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        if (bytes.length > length) {
+            throw new IllegalArgumentException("Tar header field too long: " + value);
+        }
+        System.arraycopy(bytes, 0, header, offset, bytes.length);
+    }
+}
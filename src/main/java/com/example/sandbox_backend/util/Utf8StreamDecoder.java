@@ -0,0 +1,57 @@
+package com.example.sandbox_backend.util;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes a UTF-8 byte stream that arrives in arbitrary chunks. A multibyte character cut
+ * in half by a read is kept back until the rest of it arrives instead of being mangled;
+ * invalid input is replaced with U+FFFD. Not thread safe, use one instance per stream.
+ */
+public class Utf8StreamDecoder {
+
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    // trailing bytes of an incomplete sequence from the previous chunk (at most 3)
+    private byte[] carry = new byte[0];
+
+    public void decode(ByteBuffer input, StringBuilder out) {
+        ByteBuffer in = input;
+        if (carry.length > 0) {
+            in = ByteBuffer.allocate(carry.length + input.remaining());
+            in.put(carry).put(input).flip();
+        }
+        // UTF-8 never yields more chars than bytes
+        CharBuffer chars = CharBuffer.allocate(in.remaining() + 1);
+        decoder.decode(in, chars, false);
+
+        carry = new byte[in.remaining()];
+        in.get(carry);
+        chars.flip();
+        out.append(chars);
+    }
+
+    public String decode(byte[] bytes) {
+        StringBuilder out = new StringBuilder(bytes.length);
+        decode(ByteBuffer.wrap(bytes), out);
+        return out.toString();
+    }
+
+    /**
+     * Ends the stream, turning a dangling partial character into a replacement character.
+     */
+    public void flush(StringBuilder out) {
+        CharBuffer chars = CharBuffer.allocate(carry.length + 2);
+        decoder.decode(ByteBuffer.wrap(carry), chars, true);
+        decoder.flush(chars);
+        decoder.reset();
+        carry = new byte[0];
+        chars.flip();
+        out.append(chars);
+    }
+}
@@ -0,0 +1,404 @@
+package com.example.sandbox_backend.websocket;
+
+import com.example.sandbox_backend.services.CodeExecService;
+import com.pty4j.PtyProcess;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exec sessions that outlive their WebSocket connection. The run is subscribed on its own and
+ * its output goes into a per-session {@link OutputRingBuffer} as well as to the connection
+ * currently attached. When the connection drops, the PTY and sandbox stay alive for
+ * {@code sandbox.exec.resume.grace-seconds}; a client that reconnects with the resume token and
+ * the number of output bytes it has seen gets the missed bytes replayed and continues.
+ * Afterwards the run is cancelled, which kills the PTY and releases the sandbox.
+ * <p>
+ * The run is read with at most {@link #WINDOW} messages in flight towards the attached
+ * connection, so a slow client still slows the PTY reads down; while nobody is attached no
+ * more output is requested. Each user holds at most
+ * {@code sandbox.exec.resume.max-sessions-per-user} sessions.
+ */
+@Component
+public class ExecSessionRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(ExecSessionRegistry.class);
+    private static final SecureRandom RANDOM = new SecureRandom();
+    // Output messages requested from the run but not yet taken by the attached connection
+    static final int WINDOW = 16;
+
+    private final CodeExecService codeExecService;
+    private final Duration grace;
+    private final int bufferBytes;
+    private final int maxSessionsPerUser;
+    private final int maxFrameBytes;
+    private final boolean binaryFrames;
+    private final Counter resumed;
+    private final Counter expired;
+    private final Map<String, ExecSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * One resumable run. All mutable state is guarded by the instance.
+     */
+    public static final class ExecSession {
+        private final String token;
+        private final String userKey;
+        private final long created;
+        private final WebSocketSession origin;
+        private final OutputRingBuffer output;
+        private WebSocketSession attached;
+        private Sinks.Many<WebSocketMessage> live;
+        private BaseSubscriber<WebSocketMessage> run;
+        private PtyProcess process;
+        private Disposable expiry;
+        // demand requested from the run and messages waiting in the live sink
+        private int requested;
+        private int queued;
+        private boolean finished;
+        private boolean closed;
+
+        private ExecSession(String token, String userKey, long created, WebSocketSession origin, int bufferBytes) {
+            this.token = token;
+            this.userKey = userKey;
+            this.created = created;
+            this.origin = origin;
+            this.output = new OutputRingBuffer(bufferBytes);
+        }
+    }
+
+    public ExecSessionRegistry(CodeExecService codeExecService,
+                               MeterRegistry meterRegistry,
+                               @Value("${sandbox.exec.resume.grace-seconds:30}") long graceSeconds,
+                               @Value("${sandbox.exec.resume.buffer-bytes:262144}") int bufferBytes,
+                               @Value("${sandbox.exec.resume.max-sessions-per-user:4}") int maxSessionsPerUser,
+                               @Value("${sandbox.exec.output.max-frame-bytes:16384}") int maxFrameBytes,
+                               @Value("${sandbox.exec.output.binary-frames:false}") boolean binaryFrames) {
+        this.codeExecService = codeExecService;
+        this.grace = Duration.ofSeconds(graceSeconds);
+        this.bufferBytes = bufferBytes;
+        this.maxSessionsPerUser = maxSessionsPerUser;
+        this.maxFrameBytes = maxFrameBytes;
+        this.binaryFrames = binaryFrames;
+        this.resumed = Counter.builder("sandbox.exec.resume").tag("outcome", "resumed").register(meterRegistry);
+        this.expired = Counter.builder("sandbox.exec.resume").tag("outcome", "expired").register(meterRegistry);
+    }
+
+    /**
+     * Registers a session for a run started from {@code origin}. Attach the connection before
+     * calling {@link #start} so no output has to be replayed. When the user already holds the
+     * maximum number of sessions the oldest detached one is closed; empty if all are attached.
+     */
+    public Optional<ExecSession> create(String userKey, WebSocketSession origin) {
+        ExecSession evicted = null;
+        ExecSession session;
+        synchronized (sessions) {
+            List<ExecSession> owned = sessions.values().stream()
+                    .filter(existing -> existing.userKey.equals(userKey))
+                    .sorted(Comparator.comparingLong(existing -> existing.created))
+                    .toList();
+            if (owned.size() >= maxSessionsPerUser) {
+                evicted = owned.stream().filter(ExecSessionRegistry::isDetached).findFirst().orElse(null);
+                if (evicted == null) {
+                    return Optional.empty();
+                }
+                sessions.remove(evicted.token);
+            }
+            byte[] bytes = new byte[32];
+            RANDOM.nextBytes(bytes);
+            String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+            session = new ExecSession(token, userKey, sequence.incrementAndGet(), origin, bufferBytes);
+            sessions.put(token, session);
+        }
+        if (evicted != null) {
+            log.info("Closing the oldest detached session of {} for a new run", userKey);
+            close(evicted);
+        }
+        return Optional.of(session);
+    }
+
+    /**
+     * Subscribes to the run independently of any connection, requesting output only as fast
+     * as the attached connection takes it.
+     */
+    public void start(ExecSession session, Flux<WebSocketMessage> run) {
+        BaseSubscriber<WebSocketMessage> subscriber = new BaseSubscriber<>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+                // demand is issued by request() once the subscriber is registered
+            }
+
+            @Override
+            protected void hookOnNext(WebSocketMessage message) {
+                publish(session, message);
+            }
+
+            @Override
+            protected void hookOnComplete() {
+                finish(session);
+            }
+        };
+        synchronized (session) {
+            if (session.closed) {
+                return;
+            }
+            session.run = subscriber;
+        }
+        run.onErrorResume(e -> Flux.just(session.origin.textMessage("Error: " + e.getMessage())))
+                .subscribe(subscriber);
+        request(session);
+    }
+
+    /**
+     * Records the PTY process of the session's run; it is destroyed when the session expires.
+     */
+    public void setProcess(ExecSession session, PtyProcess process) {
+        boolean closed;
+        synchronized (session) {
+            session.process = process;
+            closed = session.closed;
+        }
+        if (closed) {
+            codeExecService.destroyProcess(process);
+        }
+    }
+
+    /**
+     * Writes client input to the PTY of the session's run.
+     */
+    public Mono<Void> input(ExecSession session, String data) {
+        PtyProcess process;
+        synchronized (session) {
+            process = session.closed ? null : session.process;
+        }
+        return codeExecService.handleExec(process, data);
+    }
+
+    /**
+     * The session for {@code token}, if it has not expired. Sessions of a signed-in user can
+     * only be resumed by that user.
+     */
+    public Optional<ExecSession> find(String token, String userKey) {
+        return Optional.ofNullable(token)
+                .map(sessions::get)
+                .filter(session -> !session.userKey.startsWith("user:") || session.userKey.equals(userKey));
+    }
+
+    /**
+     * Makes {@code connection} the receiver of the session's output, taking over from any
+     * other connection. Starts with a control message carrying the resume token and the
+     * offset the replay starts at, followed by the buffered output after {@code offset}.
+     */
+    public Flux<WebSocketMessage> attach(ExecSession session, WebSocketSession connection, long offset) {
+        Disposable expiry;
+        Flux<WebSocketMessage> stream;
+        synchronized (session) {
+            if (session.closed) {
+                return Flux.just(connection.textMessage("Error: Session expired"));
+            }
+            expiry = session.expiry;
+            session.expiry = null;
+            if (session.live != null) {
+                session.live.tryEmitComplete();
+            }
+
+            long from = Math.min(Math.max(offset, session.output.start()), session.output.end());
+            byte[] replay = session.output.readFrom(from);
+            if (!binaryFrames) {
+                // text frames must not start inside a UTF-8 sequence
+                int skip = 0;
+                while (skip < replay.length && (replay[skip] & 0xC0) == 0x80) {
+                    skip++;
+                }
+                replay = Arrays.copyOfRange(replay, skip, replay.length);
+                from += skip;
+            }
+
+            // messages still queued for the previous connection are part of the replay
+            Sinks.Many<WebSocketMessage> live = Sinks.many().unicast()
+                    .onBackpressureBuffer(Queues.<WebSocketMessage>get(WINDOW).get());
+            session.live = live;
+            session.attached = connection;
+            session.queued = 0;
+            if (session.finished) {
+                live.tryEmitComplete();
+            }
+            stream = Flux.just(connection.textMessage("{\"resumeToken\":\"" + session.token + "\",\"offset\":" + from + "}"))
+                    .concatWith(Flux.fromIterable(frames(connection, replay)))
+                    .concatWith(live.asFlux().doOnNext(message -> delivered(session, live)));
+        }
+        if (expiry != null) {
+            expiry.dispose();
+            resumed.increment();
+        }
+        request(session);
+        return stream;
+    }
+
+    /**
+     * Called when {@code connection} closes or starts another run; the run is kept for the
+     * grace period unless another connection has taken over in the meantime.
+     */
+    public void detach(ExecSession session, WebSocketSession connection) {
+        synchronized (session) {
+            if (session.attached != connection || session.closed) {
+                return;
+            }
+            session.live.tryEmitComplete();
+            session.attached = null;
+            session.live = null;
+            session.queued = 0;
+            session.expiry = Mono.delay(grace).subscribe(tick -> expire(session));
+        }
+    }
+
+    private void expire(ExecSession session) {
+        synchronized (session) {
+            if (session.attached != null || session.closed) {
+                return;
+            }
+        }
+        sessions.remove(session.token);
+        close(session);
+    }
+
+    // Stops the run and kills exactly the PTY process this session started
+    private void close(ExecSession session) {
+        BaseSubscriber<WebSocketMessage> run;
+        PtyProcess process;
+        Disposable expiry;
+        synchronized (session) {
+            if (session.closed) {
+                return;
+            }
+            session.closed = true;
+            run = session.run;
+            process = session.process;
+            expiry = session.expiry;
+            if (session.live != null) {
+                session.live.tryEmitComplete();
+            }
+            session.attached = null;
+            session.live = null;
+            session.output.release();
+        }
+        if (!session.finished) {
+            expired.increment();
+            log.info("Resumable session of {} expired, stopping its run", session.userKey);
+        }
+        if (expiry != null) {
+            expiry.dispose();
+        }
+        if (run != null) {
+            run.dispose();
+        }
+        codeExecService.destroyProcess(process);
+    }
+
+    private void publish(ExecSession session, WebSocketMessage message) {
+        DataBuffer payload = message.getPayload();
+        byte[] bytes = new byte[payload.readableByteCount()];
+        payload.read(bytes);
+        DataBufferUtils.release(payload);
+        synchronized (session) {
+            session.requested = Math.max(0, session.requested - 1);
+            if (session.closed) {
+                return;
+            }
+            session.output.write(bytes);
+            if (session.live != null) {
+                session.queued++;
+                session.live.tryEmitNext(new WebSocketMessage(message.getType(), session.attached.bufferFactory().wrap(bytes)));
+            }
+        }
+    }
+
+    // The connection took a message from the live sink, so the window has room again
+    private void delivered(ExecSession session, Sinks.Many<WebSocketMessage> live) {
+        synchronized (session) {
+            if (session.live != live) {
+                return;
+            }
+            session.queued = Math.max(0, session.queued - 1);
+        }
+        request(session);
+    }
+
+    // Tops the run's demand up to the window while a connection is attached
+    private void request(ExecSession session) {
+        BaseSubscriber<WebSocketMessage> run;
+        int demand;
+        synchronized (session) {
+            if (session.run == null || session.attached == null || session.closed || session.finished) {
+                return;
+            }
+            demand = WINDOW - session.requested - session.queued;
+            if (demand <= 0) {
+                return;
+            }
+            session.requested += demand;
+            run = session.run;
+        }
+        run.request(demand);
+    }
+
+    private void finish(ExecSession session) {
+        synchronized (session) {
+            session.finished = true;
+            if (session.live != null) {
+                session.live.tryEmitComplete();
+            }
+        }
+    }
+
+    private static boolean isDetached(ExecSession session) {
+        synchronized (session) {
+            return session.attached == null;
+        }
+    }
+
+    // Replay in frames of at most maxFrameBytes, cut on UTF-8 character boundaries for text frames
+    private List<WebSocketMessage> frames(WebSocketSession connection, byte[] bytes) {
+        List<WebSocketMessage> frames = new ArrayList<>();
+        int start = 0;
+        while (start < bytes.length) {
+            int end = Math.min(bytes.length, start + maxFrameBytes);
+            if (!binaryFrames) {
+                while (end < bytes.length && end > start + 1 && (bytes[end] & 0xC0) == 0x80) {
+                    end--;
+                }
+            }
+            byte[] chunk = Arrays.copyOfRange(bytes, start, end);
+            frames.add(new WebSocketMessage(binaryFrames ? WebSocketMessage.Type.BINARY : WebSocketMessage.Type.TEXT,
+                    connection.bufferFactory().wrap(chunk)));
+            start = end;
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.sandbox_backend.websocket;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+
+/**
+ * Fixed-size ring of the last {@code capacity} output bytes of a session, in a pooled direct
+ * buffer allocated on the first write. Positions are absolute byte offsets into the session's output, so a client can ask
+ * for everything after the last byte it received. Not thread-safe; {@link #release()} when done.
+ */
+class OutputRingBuffer {
+
+    private final int capacity;
+    private ByteBuf buffer;
+    private long written;
+
+    OutputRingBuffer(int capacity) {
+        this.capacity = capacity;
+    }
+
+    void write(byte[] bytes) {
+        if (bytes.length == 0) {
+            return;
+        }
+        if (buffer == null) {
+            buffer = PooledByteBufAllocator.DEFAULT.directBuffer(capacity, capacity);
+        }
+        // only the tail can survive a write longer than the ring
+        int offset = Math.max(0, bytes.length - capacity);
+        int length = bytes.length - offset;
+        int index = (int) ((written + offset) % capacity);
+        int first = Math.min(length, capacity - index);
+        buffer.setBytes(index, bytes, offset, first);
+        buffer.setBytes(0, bytes, offset + first, length - first);
+        written += bytes.length;
+    }
+
+    /**
+     * Offset of the oldest byte still held.
+     */
+    long start() {
+        return Math.max(0, written - capacity);
+    }
+
+    /**
+     * Offset one past the newest byte.
+     */
+    long end() {
+        return written;
+    }
+
+    /**
+     * Bytes from {@code from} (clamped to {@link #start()}..{@link #end()}) to the end.
+     */
+    byte[] readFrom(long from) {
+        long begin = Math.min(Math.max(from, start()), written);
+        byte[] out = new byte[(int) (written - begin)];
+        if (out.length == 0) {
+            return out;
+        }
+        int index = (int) (begin % capacity);
+        int first = Math.min(out.length, capacity - index);
+        buffer.getBytes(index, out, 0, first);
+        buffer.getBytes(0, out, first, out.length - first);
+        return out;
+    }
+
+    void release() {
+        if (buffer != null) {
+            buffer.release();
+            buffer = null;
+        }
+    }
+}
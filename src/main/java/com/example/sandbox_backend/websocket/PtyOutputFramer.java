@@ -0,0 +1,110 @@
+package com.example.sandbox_backend.websocket;
+
+import com.example.sandbox_backend.util.Utf8StreamDecoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Coalesces raw PTY output chunks into WebSocket frames. Chunks collected during one flush
+ * interval are packed into frames of at most {@code maxFrameBytes} (a single chunk is never
+ * split). Frames are either binary, passing the pooled buffers through untouched, or text,
+ * decoded with a {@link Utf8StreamDecoder} so multibyte characters survive chunk boundaries.
+ * One instance per PTY stream.
+ */
+public class PtyOutputFramer {
+
+    // upper bound on chunks gathered in a single flush interval, also bounds what is buffered
+    private static final int MAX_CHUNKS_PER_WINDOW = 64;
+
+    private final DataBufferFactory bufferFactory;
+    private final int maxFrameBytes;
+    private final boolean binaryFrames;
+    private final Utf8StreamDecoder decoder = new Utf8StreamDecoder();
+
+    public PtyOutputFramer(DataBufferFactory bufferFactory, int maxFrameBytes, boolean binaryFrames) {
+        this.bufferFactory = bufferFactory;
+        this.maxFrameBytes = maxFrameBytes;
+        this.binaryFrames = binaryFrames;
+    }
+
+    public Flux<WebSocketMessage> frame(Flux<DataBuffer> chunks, Duration flushInterval) {
+        return chunks
+                // fair backpressure: only request upstream what downstream asked for
+                .bufferTimeout(MAX_CHUNKS_PER_WINDOW, flushInterval, true)
+                .concatMapIterable(this::toFrames)
+                .concatWith(Mono.fromCallable(this::flush))
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    List<WebSocketMessage> toFrames(List<DataBuffer> chunks) {
+        List<WebSocketMessage> frames = new ArrayList<>();
+        List<DataBuffer> group = new ArrayList<>();
+        int groupBytes = 0;
+        for (DataBuffer chunk : chunks) {
+            if (!group.isEmpty() && groupBytes + chunk.readableByteCount() > maxFrameBytes) {
+                addFrame(frames, group);
+                group = new ArrayList<>();
+                groupBytes = 0;
+            }
+            group.add(chunk);
+            groupBytes += chunk.readableByteCount();
+        }
+        if (!group.isEmpty()) {
+            addFrame(frames, group);
+        }
+        return frames;
+    }
+
+    private void addFrame(List<WebSocketMessage> frames, List<DataBuffer> group) {
+        WebSocketMessage frame = toFrame(group);
+        if (frame != null) {
+            frames.add(frame);
+        }
+    }
+
+    private WebSocketMessage toFrame(List<DataBuffer> group) {
+        if (binaryFrames) {
+            return new WebSocketMessage(WebSocketMessage.Type.BINARY, bufferFactory.join(group));
+        }
+
+        StringBuilder text = new StringBuilder();
+        for (DataBuffer chunk : group) {
+            try (DataBuffer.ByteBufferIterator it = chunk.readableByteBuffers()) {
+                while (it.hasNext()) {
+                    ByteBuffer byteBuffer = it.next();
+                    decoder.decode(byteBuffer, text);
+                }
+            } finally {
+                DataBufferUtils.release(chunk);
+            }
+        }
+        // only part of a character so far, wait for the rest
+        return text.isEmpty() ? null : textFrame(text);
+    }
+
+    // Emits whatever partial character is still buffered once the stream ends
+    private WebSocketMessage flush() {
+        if (binaryFrames) {
+            return null;
+        }
+        StringBuilder text = new StringBuilder();
+        decoder.flush(text);
+        return text.isEmpty() ? null : textFrame(text);
+    }
+
+    private WebSocketMessage textFrame(CharSequence text) {
+        DataBuffer payload = bufferFactory.allocateBuffer(text.length() * 3);
+        payload.write(text, StandardCharsets.UTF_8);
+        return new WebSocketMessage(WebSocketMessage.Type.TEXT, payload);
+    }
+}
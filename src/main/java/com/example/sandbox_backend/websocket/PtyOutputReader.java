@@ -0,0 +1,123 @@
+package com.example.sandbox_backend.websocket;
+
+import com.pty4j.PtyProcess;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reads PTY output only while the WebSocket has outstanding demand, so a slow client pauses
+ * the program through the (bounded) PTY buffer instead of growing the backend heap. Output is
+ * capped at {@code maxBytes} per run: once reached, the rest is dropped and the process killed.
+ */
+public class PtyOutputReader {
+
+    private static final Logger log = LoggerFactory.getLogger(PtyOutputReader.class);
+    private static final int READ_BUFFER_SIZE = 4096;
+    // re-check for demand/cancellation even if a wake-up was missed
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final PtyProcess process;
+    private final DataBufferFactory bufferFactory;
+    private final long maxBytes;
+    private final Counter droppedBytes;
+    private final Counter throttledBytes;
+    private final Timer throttleTimer;
+    private volatile boolean truncated;
+
+    public PtyOutputReader(PtyProcess process, DataBufferFactory bufferFactory, long maxBytes,
+                           MeterRegistry meterRegistry) {
+        this.process = process;
+        this.bufferFactory = bufferFactory;
+        this.maxBytes = maxBytes;
+        this.droppedBytes = Counter.builder("sandbox.exec.output.dropped")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.throttledBytes = Counter.builder("sandbox.exec.output.throttled")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.throttleTimer = Timer.builder("sandbox.exec.output.throttle.wait")
+                .register(meterRegistry);
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public Flux<DataBuffer> read(Scheduler scheduler) {
+        return Flux.<DataBuffer>create(sink -> {
+            Thread reader = Thread.currentThread();
+            sink.onRequest(n -> LockSupport.unpark(reader));
+            sink.onCancel(() -> LockSupport.unpark(reader));
+
+            try {
+                InputStream input = process.getInputStream();
+                byte[] buffer = new byte[READ_BUFFER_SIZE];
+                long total = 0;
+
+                while (!sink.isCancelled()) {
+                    boolean waited = awaitDemand(sink);
+                    if (sink.isCancelled()) {
+                        break;
+                    }
+                    int len = input.read(buffer);
+                    if (len == -1) {
+                        break;
+                    }
+                    if (waited) {
+                        throttledBytes.increment(len);
+                    }
+
+                    int allowed = (int) Math.min(len, maxBytes - total);
+                    if (allowed > 0) {
+                        sink.next(bufferFactory.allocateBuffer(allowed).write(buffer, 0, allowed));
+                        total += allowed;
+                    }
+                    if (allowed < len) {
+                        droppedBytes.increment(len - allowed);
+                        truncated = true;
+                        process.destroyForcibly();
+                        break;
+                    }
+                }
+                sink.complete();
+
+            } catch (Exception e) {
+                if (sink.isCancelled() || truncated) {
+                    // stream closed underneath us by cleanup or the kill above
+                    sink.complete();
+                    return;
+                }
+                log.error("Error while reading process output", e);
+                sink.error(e);
+            }
+        }).subscribeOn(scheduler);
+    }
+
+    private boolean awaitDemand(FluxSink<DataBuffer> sink) {
+        if (sink.requestedFromDownstream() > 0) {
+            return false;
+        }
+        long start = System.nanoTime();
+        while (sink.requestedFromDownstream() == 0 && !sink.isCancelled()) {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        throttleTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return true;
+    }
+}
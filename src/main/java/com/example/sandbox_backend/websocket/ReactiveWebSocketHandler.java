@@ -2,35 +2,58 @@ package com.example.sandbox_backend.websocket;
 
 import com.example.sandbox_backend.services.CodeExecService;
 import com.example.sandbox_backend.dto.CompilerRequest;
+import com.example.sandbox_backend.services.ExecAdmissionService;
+import com.example.sandbox_backend.util.JwtUtil;
+import com.example.sandbox_backend.util.RequestUtil;
 import com.example.sandbox_backend.util.ValidationUtil;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.pty4j.PtyProcess;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.socket.WebSocketHandler;
 import org.springframework.web.reactive.socket.WebSocketMessage;
 import org.springframework.web.reactive.socket.WebSocketSession;
+import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Optional;
+
 @Component
 public class ReactiveWebSocketHandler implements WebSocketHandler {
 
     private static final Logger log = LoggerFactory.getLogger(ReactiveWebSocketHandler.class.getName());
+    private static final String EXEC_SESSION = "execSession";
     private final ObjectMapper mapper = new ObjectMapper();
     private final CodeExecService codeExecService;
+    private final ExecAdmissionService admissionService;
+    private final ExecSessionRegistry execSessions;
+    private final JwtUtil jwtUtil;
 
-    public ReactiveWebSocketHandler(CodeExecService codeExecService) {
+    public ReactiveWebSocketHandler(CodeExecService codeExecService,
+                                    ExecAdmissionService admissionService,
+                                    ExecSessionRegistry execSessions,
+                                    JwtUtil jwtUtil) {
         this.codeExecService = codeExecService;
+        this.admissionService = admissionService;
+        this.execSessions = execSessions;
+        this.jwtUtil = jwtUtil;
     }
 
     @Override
     public Mono<Void> handle(WebSocketSession session) {
         log.info("WebSocket connection established: {}", session.getId());
 
+        String ip = RequestUtil.clientIp(session.getHandshakeInfo().getRemoteAddress());
+        String userKey = userKey(session, ip);
+        boolean resumable = "true".equals(UriComponentsBuilder.fromUri(session.getHandshakeInfo().getUri())
+                .build().getQueryParams().getFirst("resumable"));
+
         Flux<WebSocketMessage> output = session.receive()
-                .flatMap(message -> handleMessage(session, message))
+                .flatMap(message -> handleMessage(session, message, userKey, ip, resumable))
                 .doOnError(e -> log.error("Error in WebSocket session", e))
                 .doFinally(signalType -> cleanupResources(session));
 
@@ -38,22 +61,38 @@ public class ReactiveWebSocketHandler implements WebSocketHandler {
                 .doOnTerminate(() -> log.info("WebSocket connection closed: {}", session.getId()));
     }
 
-    private Flux<WebSocketMessage> handleMessage(WebSocketSession session, WebSocketMessage message) {
+    private Flux<WebSocketMessage> handleMessage(WebSocketSession session, WebSocketMessage message,
+                                                 String userKey, String ip, boolean resumable) {
         String payload = message.getPayloadAsText();
 
         return Mono.fromCallable(() -> ValidationUtil.isJson(payload))
                 .flatMapMany(isJson -> {
                     if (isJson) {
                         try {
-                            CompilerRequest request = mapper.readValue(payload, CompilerRequest.class);
-                            return codeExecService.startExec(session, request);
+                            JsonNode json = mapper.readTree(payload);
+                            if (json.has("resume")) {
+                                return resume(session, json, userKey);
+                            }
+                            CompilerRequest request = mapper.treeToValue(json, CompilerRequest.class);
+                            if (!resumable) {
+                                return admissionService.run(userKey, ip, position -> queueMessage(session, position),
+                                        () -> codeExecService.startExec(session, request));
+                            }
+                            return execSessions.create(userKey, session)
+                                    .map(execSession -> startResumable(session, execSession, request, userKey, ip))
+                                    .orElseGet(() -> Flux.just(session.textMessage("Error: Too many resumable sessions")));
                         } catch (Exception e) {
                             log.error("Error parsing JSON", e);
                             return Flux.just(session.textMessage("Error: Invalid request format"));
                         }
                     } else {
-                        return codeExecService.handleExec(session, payload)
-                                .thenMany(Flux.empty());
+                        // input of a resumable session goes to the PTY of its run, wherever it was started
+                        ExecSessionRegistry.ExecSession execSession =
+                                (ExecSessionRegistry.ExecSession) session.getAttributes().get(EXEC_SESSION);
+                        Mono<Void> input = execSession != null
+                                ? execSessions.input(execSession, payload)
+                                : codeExecService.handleExec(session, payload);
+                        return input.thenMany(Flux.empty());
                     }
                 })
                 .onErrorResume(e -> {
@@ -62,29 +101,74 @@ public class ReactiveWebSocketHandler implements WebSocketHandler {
                 });
     }
 
-    private void cleanupResources(WebSocketSession session) {
-        PtyProcess proc = (PtyProcess) session.getAttributes().remove("ptyProcess");
-        String containerId = (String) session.getAttributes().remove("containerId");
-
-        if (proc != null && proc.isAlive()) {
-            try {
-                proc.getInputStream().close();
-                proc.getOutputStream().close();
-                proc.destroy();
-            } catch (Exception e) {
-                log.warn("Failed to destroy PTY process", e);
-            }
+    private Flux<WebSocketMessage> startResumable(WebSocketSession session, ExecSessionRegistry.ExecSession execSession,
+                                                  CompilerRequest request, String userKey, String ip) {
+        Flux<WebSocketMessage> run = admissionService.run(userKey, ip, position -> queueMessage(session, position),
+                () -> codeExecService.startExec(session, request, process -> execSessions.setProcess(execSession, process)));
+        switchTo(session, execSession);
+        Flux<WebSocketMessage> attached = execSessions.attach(execSession, session, 0);
+        execSessions.start(execSession, run);
+        return attached;
+    }
+
+    // {"resume": "<token>", "offset": <output bytes already received>}
+    private Flux<WebSocketMessage> resume(WebSocketSession session, JsonNode json, String userKey) {
+        return execSessions.find(json.path("resume").asText(null), userKey)
+                .map(execSession -> {
+                    switchTo(session, execSession);
+                    return execSessions.attach(execSession, session, json.path("offset").asLong(0));
+                })
+                .orElseGet(() -> Flux.just(session.textMessage("Error: Unknown or expired session")));
+    }
+
+    // A connection follows one session at a time; the one it leaves keeps running for the grace period
+    private void switchTo(WebSocketSession session, ExecSessionRegistry.ExecSession execSession) {
+        Object previous = session.getAttributes().put(EXEC_SESSION, execSession);
+        if (previous != null && previous != execSession) {
+            execSessions.detach((ExecSessionRegistry.ExecSession) previous, session);
         }
+    }
 
-        if (containerId != null) {
-            boolean removed = codeExecService.destroyContainer(containerId);
-            if (!removed) {
-                log.warn("Container {} could not be destroyed (maybe already removed)", containerId);
-            } else {
-                log.info("Cleaned up resources for session {}", session.getId());
+    private static WebSocketMessage queueMessage(WebSocketSession session, int position) {
+        return session.textMessage("Waiting for a free sandbox: position " + position + " in queue\r\n");
+    }
+
+    // /code/exec is public, so the token is only used to group runs per user; anonymous runs are grouped by IP
+    private String userKey(WebSocketSession session, String ip) {
+        String token = null;
+        String header = session.getHandshakeInfo().getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        if (header != null && header.startsWith("Bearer ")) {
+            token = header.substring(7);
+        } else {
+            HttpCookie cookie = session.getHandshakeInfo().getCookies().getFirst("access_token");
+            if (cookie != null) {
+                token = cookie.getValue();
             }
         }
 
+        return Optional.ofNullable(token)
+                .flatMap(jwtUtil::verifyAccessToken)
+                .map(verified -> RequestUtil.userKey(verified.userId()))
+                .orElse(RequestUtil.ipKey(ip));
+    }
+
+    private void cleanupResources(WebSocketSession session) {
+        ExecSessionRegistry.ExecSession execSession =
+                (ExecSessionRegistry.ExecSession) session.getAttributes().remove(EXEC_SESSION);
+        if (execSession != null) {
+            // the PTY and sandbox are kept for the grace period, the registry stops them if nobody resumes
+            execSessions.detach(execSession, session);
+            return;
+        }
+
+        boolean hadRun = session.getAttributes().containsKey("ptyProcess");
+        codeExecService.destroyProcess(session);
+
+        // The container itself is released by the run's own doFinally
+        if (hadRun) {
+            log.info("Cleaned up resources for session {}", session.getId());
+        }
+
         session.getAttributes().clear();
     }
 }
\ No newline at end of file
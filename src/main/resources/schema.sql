@@ -15,6 +15,32 @@ CREATE TABLE IF NOT EXISTS users (
                        profile_image BYTEA NULL
 );
 
+-- Profile images live in their own table so user lookups don't load them
+ALTER TABLE users ADD COLUMN IF NOT EXISTS profile_image_hash TEXT NULL;
+
+CREATE TABLE IF NOT EXISTS profile_images (
+                                id UUID PRIMARY KEY DEFAULT gen_random_uuid(),
+                                user_id UUID NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+                                variant TEXT NOT NULL,
+                                hash TEXT NOT NULL,
+                                content_type TEXT NOT NULL,
+                                data BYTEA NOT NULL,
+                                UNIQUE (user_id, variant)
+);
+CREATE INDEX IF NOT EXISTS profile_images_hash_idx ON profile_images (hash);
+
+-- Move images still stored inline in users.profile_image (the column is no longer mapped)
+INSERT INTO profile_images (user_id, variant, hash, content_type, data)
+SELECT id, 'original', encode(sha256(profile_image), 'hex'), 'application/octet-stream', profile_image
+FROM users
+WHERE profile_image IS NOT NULL
+ON CONFLICT (user_id, variant) DO NOTHING;
+
+UPDATE users
+SET profile_image_hash = encode(sha256(profile_image), 'hex'),
+    profile_image = NULL
+WHERE profile_image IS NOT NULL;
+
 -- Create refresh_tokens table
 CREATE TABLE IF NOT EXISTS refresh_tokens (
                                 id UUID PRIMARY KEY DEFAULT gen_random_uuid(),
@@ -22,3 +48,18 @@ CREATE TABLE IF NOT EXISTS refresh_tokens (
                                 token TEXT NOT NULL,
                                 expires_at BIGINT NOT NULL
 );
+
+-- Refresh tokens are looked up by their sha-256, never stored in plain text
+ALTER TABLE refresh_tokens ADD COLUMN IF NOT EXISTS token_hash TEXT NULL;
+ALTER TABLE refresh_tokens ALTER COLUMN token DROP NOT NULL;
+UPDATE refresh_tokens
+SET token_hash = encode(sha256(convert_to(token, 'UTF8')), 'hex'),
+    token = NULL
+WHERE token IS NOT NULL;
+-- Logins within the same second used to produce identical tokens
+DELETE FROM refresh_tokens a USING refresh_tokens b
+WHERE a.token_hash = b.token_hash AND a.id < b.id;
+
+CREATE UNIQUE INDEX IF NOT EXISTS refresh_tokens_token_hash_idx ON refresh_tokens (token_hash);
+CREATE INDEX IF NOT EXISTS refresh_tokens_user_id_idx ON refresh_tokens (user_id);
+CREATE INDEX IF NOT EXISTS refresh_tokens_expires_at_idx ON refresh_tokens (expires_at);
@@ -0,0 +1,40 @@
+package com.example.sandbox_backend.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BubblewrapExecutionBackendTest {
+
+    @TempDir
+    Path rootfs;
+
+    @TempDir
+    Path work;
+
+    @TempDir
+    Path cgroup;
+
+    @Test
+    void unavailableWithoutCgroupDir() {
+        // /bin/sh stands in for an installed bwrap
+        assertFalse(available(""));
+        assertFalse(available(cgroup.resolve("missing").toString()));
+    }
+
+    @Test
+    void availableWithCgroupDir() {
+        assertTrue(available(cgroup.toString()));
+    }
+
+    private boolean available(String cgroupDir) {
+        BubblewrapExecutionBackend backend = new BubblewrapExecutionBackend(null, "/bin/sh",
+                rootfs.toString(), work.toString(), cgroupDir, 1024);
+        backend.init();
+        return Boolean.TRUE.equals(backend.isAvailable().block());
+    }
+}
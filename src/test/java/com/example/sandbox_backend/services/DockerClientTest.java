@@ -0,0 +1,170 @@
+package com.example.sandbox_backend.services;
+
+import io.netty.channel.unix.DomainSocketAddress;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.test.StepVerifier;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@EnabledOnOs(OS.LINUX)
+class DockerClientTest {
+
+    private static final String CONTAINER_ID = "a".repeat(64);
+
+    @TempDir
+    Path tempDir;
+
+    private DisposableServer server;
+    private DockerClient dockerClient;
+
+    @BeforeEach
+    void startFakeDaemon() {
+        String socketPath = tempDir.resolve("docker.sock").toString();
+        server = HttpServer.create()
+                .bindAddress(() -> new DomainSocketAddress(socketPath))
+                .route(routes -> routes
+                        .get("/v1.41/_ping", (req, res) -> res.sendString(Mono.just("OK")))
+                        .post("/v1.41/containers/create", (req, res) -> res.status(201)
+                                .sendString(Mono.just("{\"Id\":\"" + CONTAINER_ID + "\"}")))
+                        .post("/v1.41/containers/{id}/start", (req, res) -> res.status(204).send())
+                        .get("/v1.41/containers/json", (req, res) -> res
+                                .sendString(Mono.just(req.uri().contains("sandbox.owner%3Dnode-1")
+                                        ? "[{\"Id\":\"" + CONTAINER_ID + "\",\"Created\":1700000000}]"
+                                        : "[]")))
+                        .get("/v1.41/containers/{id}/json", (req, res) -> res
+                                .sendString(Mono.just("{\"NetworkSettings\":{\"Networks\":{\"bridge\":{\"IPAddress\":\"172.17.0.2\"}}}}")))
+                        .get("/v1.41/containers/{id}/stats", (req, res) -> res
+                                .sendString(Mono.just("{\"cpu_stats\":{\"cpu_usage\":{\"total_usage\":123456789}}}")))
+                        .delete("/v1.41/containers/{id}", (req, res) -> CONTAINER_ID.equals(req.param("id"))
+                                ? res.status(204).send()
+                                : res.status(404).sendString(Mono.just("{\"message\":\"No such container\"}")))
+                        .post("/v1.41/containers/{id}/exec", (req, res) -> res.status(201)
+                                .sendString(Mono.just("{\"Id\":\"exec1\"}")))
+                        .post("/v1.41/exec/{id}/start", (req, res) -> res
+                                .sendByteArray(Mono.just(multiplexed())))
+                        .get("/v1.41/exec/{id}/json", (req, res) -> res
+                                .sendString(Mono.just("{\"ExitCode\":3}"))))
+                .bindNow();
+        dockerClient = new DockerClient(socketPath);
+    }
+
+    @AfterEach
+    void stopFakeDaemon() {
+        server.disposeNow();
+    }
+
+    @Test
+    void pingReportsAvailableDaemon() {
+        StepVerifier.create(dockerClient.ping())
+                .expectNext(true)
+                .verifyComplete();
+    }
+
+    @Test
+    void runContainerCreatesAndStarts() {
+        StepVerifier.create(dockerClient.runContainer(Map.of("Image", "c-image")))
+                .expectNext(CONTAINER_ID)
+                .verifyComplete();
+    }
+
+    @Test
+    void inspectReturnsNetworkSettings() {
+        StepVerifier.create(dockerClient.inspectContainer(CONTAINER_ID))
+                .assertNext(json -> assertEquals("172.17.0.2",
+                        json.path("NetworkSettings").path("Networks").path("bridge").path("IPAddress").asText()))
+                .verifyComplete();
+    }
+
+    @Test
+    void listContainersFiltersByLabel() {
+        StepVerifier.create(dockerClient.listContainers(Map.of("sandbox.owner", "node-1")))
+                .assertNext(json -> assertEquals(CONTAINER_ID, json.path("Id").asText()))
+                .verifyComplete();
+        StepVerifier.create(dockerClient.listContainers(Map.of("sandbox.owner", "node-2")))
+                .verifyComplete();
+    }
+
+    @Test
+    void cpuUsageReadsStatsSample() {
+        StepVerifier.create(dockerClient.cpuUsageNanos(CONTAINER_ID))
+                .expectNext(123456789L)
+                .verifyComplete();
+    }
+
+    @Test
+    void removeMissingContainerEmitsFalse() {
+        StepVerifier.create(dockerClient.removeContainer(CONTAINER_ID, true))
+                .expectNext(true)
+                .verifyComplete();
+        StepVerifier.create(dockerClient.removeContainer("missing", true))
+                .expectNext(false)
+                .verifyComplete();
+    }
+
+    @Test
+    void execStartDemultiplexesOutput() {
+        StepVerifier.create(dockerClient.execCreate(CONTAINER_ID, List.of("true"))
+                        .flatMapMany(dockerClient::execStart))
+                .assertNext(frame -> {
+                    assertEquals(DockerClient.STDOUT, frame.stream());
+                    assertArrayEquals("hello".getBytes(StandardCharsets.UTF_8), frame.payload());
+                })
+                .assertNext(frame -> {
+                    assertEquals(DockerClient.STDERR, frame.stream());
+                    assertArrayEquals("oops".getBytes(StandardCharsets.UTF_8), frame.payload());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void execReturnsExitCode() {
+        StepVerifier.create(dockerClient.exec(CONTAINER_ID, List.of("false")))
+                .expectNext(3L)
+                .verifyComplete();
+    }
+
+    @Test
+    void demuxerKeepsFramesSplitAcrossChunks() {
+        DockerClient.StreamDemuxer demuxer = new DockerClient.StreamDemuxer();
+        byte[] data = multiplexed();
+
+        assertEquals(0, demuxer.decode(Arrays.copyOfRange(data, 0, 10)).size());
+        assertEquals(2, demuxer.decode(Arrays.copyOfRange(data, 10, data.length)).size());
+    }
+
+    private static byte[] multiplexed() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeFrame(out, DockerClient.STDOUT, "hello");
+        writeFrame(out, DockerClient.STDERR, "oops");
+        return out.toByteArray();
+    }
+
+    private static void writeFrame(ByteArrayOutputStream out, int stream, String payload) {
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        out.write(stream);
+        out.write(0);
+        out.write(0);
+        out.write(0);
+        out.write(bytes.length >>> 24);
+        out.write(bytes.length >>> 16);
+        out.write(bytes.length >>> 8);
+        out.write(bytes.length);
+        out.writeBytes(bytes);
+    }
+}
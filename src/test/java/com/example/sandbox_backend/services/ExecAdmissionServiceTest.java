@@ -0,0 +1,132 @@
+package com.example.sandbox_backend.services;
+
+import com.example.sandbox_backend.mappings.Language;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExecAdmissionServiceTest {
+
+    // order in which tasks were started, queue positions and errors seen per run
+    private final List<String> started = new ArrayList<>();
+    private final Map<String, List<Integer>> positions = new HashMap<>();
+    private final Map<String, Throwable> errors = new HashMap<>();
+    private final Map<String, Sinks.Empty<Void>> gates = new HashMap<>();
+
+    @Test
+    void admitsRoundRobinAcrossUsersAndFifoPerUser() {
+        ExecAdmissionService admission = service(1, 3, 10, 10);
+        submit(admission, "a1", "user:a", "10.0.0.1");
+        submit(admission, "a2", "user:a", "10.0.0.1");
+        submit(admission, "a3", "user:a", "10.0.0.1");
+        submit(admission, "b1", "user:b", "10.0.0.2");
+
+        assertEquals(List.of("a1"), started);
+        assertEquals(1, admission.getRunning());
+        assertEquals(3, admission.getQueued());
+
+        complete("a1");
+        complete("a2");
+        complete("b1");
+
+        assertEquals(List.of("a1", "a2", "b1", "a3"), started);
+        assertEquals(List.of(1), positions.get("a2"));
+        // a3 moves behind b1 once b1 arrives, then forward as the others are admitted
+        assertEquals(List.of(2, 3, 2, 1), positions.get("a3"));
+        assertEquals(List.of(2, 1), positions.get("b1"));
+    }
+
+    @Test
+    void rejectsRunsPastTheUserAndAddressCaps() {
+        ExecAdmissionService admission = service(1, 2, 3, 10);
+        submit(admission, "a1", "user:a", "10.0.0.1");
+        submit(admission, "a2", "user:a", "10.0.0.1");
+        submit(admission, "a3", "user:a", "10.0.0.1");
+        submit(admission, "b1", "user:b", "10.0.0.1");
+        submit(admission, "c1", "user:c", "10.0.0.1");
+
+        assertRejected("a3", false);
+        assertNull(errors.get("b1"));
+        assertRejected("c1", false);
+
+        // finished runs free their user's slot again
+        complete("a1");
+        submit(admission, "a4", "user:a", "10.0.0.1");
+        assertNull(errors.get("a4"));
+    }
+
+    @Test
+    void rejectsAsServerBusyWhenTheQueueIsFull() {
+        ExecAdmissionService admission = service(1, 2, 4, 1);
+        submit(admission, "a1", "user:a", "10.0.0.1");
+        submit(admission, "b1", "user:b", "10.0.0.2");
+        submit(admission, "c1", "user:c", "10.0.0.3");
+
+        assertNull(errors.get("b1"));
+        assertRejected("c1", true);
+    }
+
+    @Test
+    void releasesSlotsWhenRunsAreCancelled() {
+        ExecAdmissionService admission = service(1, 1, 4, 10);
+        Disposable a1 = submit(admission, "a1", "user:a", "10.0.0.1");
+        Disposable b1 = submit(admission, "b1", "user:b", "10.0.0.2");
+        submit(admission, "c1", "user:c", "10.0.0.3");
+
+        // a waiting run leaves the queue and the others move up
+        b1.dispose();
+        assertEquals(1, admission.getQueued());
+        assertEquals(List.of(2, 1), positions.get("c1"));
+
+        // a running run frees its slot for the next one
+        a1.dispose();
+        assertEquals(List.of("a1", "c1"), started);
+        assertEquals(1, admission.getRunning());
+        assertEquals(0, admission.getQueued());
+
+        submit(admission, "b2", "user:b", "10.0.0.2");
+        submit(admission, "a2", "user:a", "10.0.0.1");
+        assertNull(errors.get("b2"));
+        assertNull(errors.get("a2"));
+    }
+
+    private static ExecAdmissionService service(int maxConcurrent, int maxPerUser, int maxPerIp, int maxQueued) {
+        return new ExecAdmissionService(new Language(), new SimpleMeterRegistry(), maxConcurrent, 0.75,
+                268435456L, 2, maxPerUser, maxPerIp, maxQueued);
+    }
+
+    // A run whose task records its start and lasts until complete(name)
+    private Disposable submit(ExecAdmissionService admission, String name, String userKey, String ip) {
+        Sinks.Empty<Void> gate = Sinks.empty();
+        gates.put(name, gate);
+        return admission.run(userKey, ip, position -> position, () -> {
+                    started.add(name);
+                    return gate.asMono().thenMany(Flux.<Integer>empty());
+                })
+                .subscribe(position -> positions.computeIfAbsent(name, k -> new ArrayList<>()).add(position),
+                        e -> errors.put(name, e));
+    }
+
+    private void complete(String name) {
+        gates.get(name).tryEmitEmpty();
+    }
+
+    private void assertRejected(String name, boolean serverBusy) {
+        ExecAdmissionService.AdmissionRejectedException e =
+                assertInstanceOf(ExecAdmissionService.AdmissionRejectedException.class, errors.get(name));
+        assertEquals(serverBusy, e.isServerBusy());
+        assertTrue(started.stream().noneMatch(name::equals));
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.sandbox_backend.services;
+
+import com.example.sandbox_backend.dto.JudgeCaseResult;
+import com.example.sandbox_backend.dto.RunResult;
+import com.example.sandbox_backend.mappings.Language;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JudgeServiceTest {
+
+    private static final long MIB = 1024 * 1024;
+    private static final JudgeService.CaseLimits TWO_SECONDS = new JudgeService.CaseLimits(Duration.ofMillis(2000), 64 * MIB);
+
+    private final JudgeService judgeService = new JudgeService(new Language(), null, null, null, null,
+            100, 2, 2000, 10000, 120000, 256 * MIB, 65536, 1048576, 30000);
+
+    @Test
+    void killedByTimeoutIsTimeLimitExceeded() {
+        assertEquals(JudgeCaseResult.TIME_LIMIT_EXCEEDED, JudgeService.verdict(result("", 124, 2000, false), "", TWO_SECONDS));
+        assertEquals(JudgeCaseResult.TIME_LIMIT_EXCEEDED, JudgeService.verdict(result("", 137, 2050, false), "", TWO_SECONDS));
+        // killed by the runner from outside
+        assertEquals(JudgeCaseResult.TIME_LIMIT_EXCEEDED, JudgeService.verdict(result("", -1, 4000, true), "", TWO_SECONDS));
+    }
+
+    @Test
+    void killedBeforeTheTimeLimitIsMemoryLimitExceeded() {
+        // SIGKILL from the OOM killer
+        assertEquals(JudgeCaseResult.MEMORY_LIMIT_EXCEEDED, JudgeService.verdict(result("", 137, 300, false), "", TWO_SECONDS));
+    }
+
+    @Test
+    void failedAllocationIsMemoryLimitExceeded() {
+        assertEquals(JudgeCaseResult.MEMORY_LIMIT_EXCEEDED, JudgeService.verdict(
+                failed(134, "terminate called after throwing an instance of 'std::bad_alloc'\n"), "", TWO_SECONDS));
+        assertEquals(JudgeCaseResult.MEMORY_LIMIT_EXCEEDED, JudgeService.verdict(
+                failed(1, "Traceback (most recent call last):\n  ...\nMemoryError\n"), "", TWO_SECONDS));
+        assertEquals(JudgeCaseResult.MEMORY_LIMIT_EXCEEDED, JudgeService.verdict(
+                failed(1, "Exception in thread \"main\" java.lang.OutOfMemoryError: Java heap space\n"), "", TWO_SECONDS));
+    }
+
+    @Test
+    void otherFailuresAreRuntimeErrors() {
+        assertEquals(JudgeCaseResult.RUNTIME_ERROR, JudgeService.verdict(result("", 1, 10, false), "", TWO_SECONDS));
+        assertEquals(JudgeCaseResult.RUNTIME_ERROR, JudgeService.verdict(failed(139, ""), "", TWO_SECONDS));
+        assertEquals(JudgeCaseResult.RUNTIME_ERROR, JudgeService.verdict(
+                failed(1, "Traceback (most recent call last):\n  ...\nZeroDivisionError: division by zero\n"), "", TWO_SECONDS));
+    }
+
+    @Test
+    void ignoresTrailingWhitespaceAndBlankLines() {
+        assertEquals(JudgeCaseResult.ACCEPTED, JudgeService.verdict(result("1 2  \r\n3\t\n\n\n", 0, 10, false), "1 2\n3\n", TWO_SECONDS));
+        assertEquals(JudgeCaseResult.WRONG_ANSWER, JudgeService.verdict(result("1  2\n3\n", 0, 10, false), "1 2\n3\n", TWO_SECONDS));
+        assertEquals(JudgeCaseResult.WRONG_ANSWER, JudgeService.verdict(result("\n1 2\n3\n", 0, 10, false), "1 2\n3\n", TWO_SECONDS));
+        assertEquals("a\n\nb", JudgeService.normalize("a \n\nb\t\n \n"));
+    }
+
+    @Test
+    void truncatedOutputIsOutputLimitExceeded() {
+        RunResult truncated = new RunResult("1 2", "", 137, 10, null, false, true);
+        assertEquals(JudgeCaseResult.OUTPUT_LIMIT_EXCEEDED, JudgeService.verdict(truncated, "1 2", TWO_SECONDS));
+    }
+
+    @Test
+    void caseCommandDropsStdbufAndAppliesLimits() {
+        JudgeService.CaseLimits limits = new JudgeService.CaseLimits(Duration.ofMillis(1500), 64 * MIB);
+
+        assertEquals("ulimit -v 65536 && exec timeout -s KILL 1.500 ./App", judgeService.caseCommand("c", limits));
+        assertEquals("export JAVA_TOOL_OPTIONS=-Xmx64m && exec timeout -s KILL 1.500 java -cp out App",
+                judgeService.caseCommand("java", limits));
+        assertEquals("export NODE_OPTIONS=--max-old-space-size=64 && exec timeout -s KILL 1.500 node App.js",
+                judgeService.caseCommand("javascript", limits));
+        assertEquals("ulimit -v 65536 && exec timeout -s KILL 1.500 python3 App.py", judgeService.caseCommand("python", limits));
+    }
+
+    private static RunResult result(String stdout, int exitCode, long wallTimeMs, boolean timedOut) {
+        return new RunResult(stdout, "", exitCode, wallTimeMs, null, timedOut, false);
+    }
+
+    private static RunResult failed(int exitCode, String stderr) {
+        return new RunResult("", stderr, exitCode, 10, null, false, false);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.sandbox_backend.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TarUtilTest {
+
+    @Test
+    void writesAsciiFile() {
+        assertReadsBack("App.c", "int main() { return 0; }\n");
+    }
+
+    @Test
+    void sizesMultibyteContentInBytes() {
+        // 10 UTF-8 bytes for 7 characters
+        assertReadsBack("App.py", "h\u00e9llo \u20ac");
+    }
+
+    @Test
+    void padsContentOfExactlyOneBlock() {
+        assertReadsBack("App.js", "x".repeat(512));
+    }
+
+    private static void assertReadsBack(String fileName, String content) {
+        byte[] expected = content.getBytes(StandardCharsets.UTF_8);
+        ByteBuf buf = TarUtil.singleFileArchive(UnpooledByteBufAllocator.DEFAULT, fileName, content, 1002);
+        try {
+            byte[] archive = ByteBufUtil.getBytes(buf);
+            byte[] header = Arrays.copyOfRange(archive, 0, 512);
+            int padded = (expected.length + 511) / 512 * 512;
+
+            assertEquals(512 + padded + 1024, archive.length);
+            assertEquals(fileName, field(header, 0, 100));
+            assertEquals(0644, octal(header, 100, 8));
+            assertEquals(1002, octal(header, 108, 8));
+            assertEquals(expected.length, octal(header, 124, 12));
+            assertEquals('0', header[156]);
+            assertEquals("ustar", field(header, 257, 6));
+            assertEquals(checksum(header), octal(header, 148, 8));
+            assertArrayEquals(expected, Arrays.copyOfRange(archive, 512, 512 + expected.length));
+            // padding and the two end-of-archive blocks are zeros
+            for (int i = 512 + expected.length; i < archive.length; i++) {
+                assertEquals(0, archive[i]);
+            }
+        } finally {
+            buf.release();
+        }
+    }
+
+    // Sum of the header bytes with the checksum field counted as spaces
+    private static long checksum(byte[] header) {
+        byte[] copy = header.clone();
+        Arrays.fill(copy, 148, 156, (byte) ' ');
+        long sum = 0;
+        for (byte b : copy) {
+            sum += b & 0xff;
+        }
+        return sum;
+    }
+
+    private static String field(byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        return new String(header, offset, end - offset, StandardCharsets.US_ASCII);
+    }
+
+    private static long octal(byte[] header, int offset, int length) {
+        return Long.parseLong(field(header, offset, length).trim(), 8);
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.sandbox_backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class Utf8StreamDecoderTest {
+
+    @Test
+    void keepsMultibyteCharacterSplitAcrossChunks() {
+        byte[] bytes = "h\u00e9llo \u20ac".getBytes(StandardCharsets.UTF_8);
+        Utf8StreamDecoder decoder = new Utf8StreamDecoder();
+
+        // cut inside 'é' and inside '€'
+        String first = decoder.decode(Arrays.copyOfRange(bytes, 0, 2));
+        String second = decoder.decode(Arrays.copyOfRange(bytes, 2, bytes.length - 1));
+        String third = decoder.decode(Arrays.copyOfRange(bytes, bytes.length - 1, bytes.length));
+
+        assertEquals("h", first);
+        assertEquals("h\u00e9llo ", first + second);
+        assertEquals("h\u00e9llo \u20ac", first + second + third);
+    }
+
+    @Test
+    void replacesInvalidAndDanglingBytes() {
+        Utf8StreamDecoder decoder = new Utf8StreamDecoder();
+        StringBuilder out = new StringBuilder(decoder.decode(new byte[]{'a', (byte) 0xff, 'b', (byte) 0xe2}));
+        decoder.flush(out);
+
+        assertEquals("a\ufffdb\ufffd", out.toString());
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.sandbox_backend.websocket;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import org.springframework.web.reactive.socket.client.ReactorNettyWebSocketClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * End-to-end load on {@code /code/exec} without real containers: the backend talks to a
+ * {@link FakeDockerDaemon} and runs its shim instead of {@code docker exec}. Each session submits
+ * a CompilerRequest, answers the program's stdin once output arrives and waits for the exit
+ * status. Reports sessions/sec, time to first byte, session latency and output throughput.
+ * Run with {@code ./gradlew loadTest -Dload.sessions=1000 -Dload.concurrency=200}.
+ */
+@Tag("load")
+@EnabledOnOs(OS.LINUX)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "jwt.secret=load-test-secret-load-test-secret-load-test-secret",
+        "jwt.access-token-minutes=5",
+        "jwt.refresh-token-days=2",
+        "spring.sql.init.mode=never",
+        "spring.r2dbc.url=r2dbc:postgresql://localhost:5432/postgres",
+        "sandbox.artifact-cache.enabled=false",
+        "sandbox.pool.size-per-language=4"
+})
+class ExecLoadTest {
+
+    private static final int SESSIONS = Integer.getInteger("load.sessions", 200);
+    private static final int CONCURRENCY = Integer.getInteger("load.concurrency", 50);
+    private static final long CREATE_LATENCY_MS = Long.getLong("load.create-latency-ms", 200);
+    private static final long EXEC_LATENCY_MS = Long.getLong("load.exec-latency-ms", 50);
+    private static final int OUTPUT_LINES = Integer.getInteger("load.output-lines", 200);
+    private static final Duration SESSION_TIMEOUT = Duration.ofMillis(Long.getLong("load.timeout-ms", 30_000));
+
+    private static final String REQUEST = "{\"language\":\"python\",\"sourceCode\":\"print(input())\"}";
+    private static final String EXIT_MARKER = "----- Exited with status";
+
+    private static FakeDockerDaemon daemon;
+
+    @LocalServerPort
+    int port;
+
+    @DynamicPropertySource
+    static void fakeDocker(DynamicPropertyRegistry registry) throws Exception {
+        daemon = new FakeDockerDaemon(Files.createTempDirectory("fake-docker"),
+                Duration.ofMillis(CREATE_LATENCY_MS), Duration.ofMillis(EXEC_LATENCY_MS), OUTPUT_LINES);
+        registry.add("docker.socket-path", daemon::getSocketPath);
+        registry.add("sandbox.exec.docker-command", daemon::getCliPath);
+        // every session comes from 127.0.0.1, so the per-IP cap must not be what limits the run
+        registry.add("sandbox.admission.max-concurrent", () -> CONCURRENCY);
+        registry.add("sandbox.admission.max-per-ip", () -> CONCURRENCY);
+        registry.add("sandbox.admission.max-per-user", () -> CONCURRENCY);
+    }
+
+    @AfterAll
+    static void stopDaemon() {
+        daemon.close();
+    }
+
+    @Test
+    void execSessionsUnderLoad() {
+        ReactorNettyWebSocketClient client = new ReactorNettyWebSocketClient();
+        URI uri = URI.create("ws://localhost:" + port + "/code/exec");
+        Queue<Long> firstByteNanos = new ConcurrentLinkedQueue<>();
+        Queue<Long> sessionNanos = new ConcurrentLinkedQueue<>();
+        AtomicLong outputBytes = new AtomicLong();
+        AtomicInteger failures = new AtomicInteger();
+
+        long start = System.nanoTime();
+        Flux.range(0, SESSIONS)
+                .flatMap(i -> {
+                    SessionResult result = new SessionResult();
+                    return client.execute(uri, session -> runSession(session, result))
+                            .timeout(SESSION_TIMEOUT)
+                            .doOnSuccess(v -> {
+                                if (result.completed()) {
+                                    firstByteNanos.add(result.firstByteNanos);
+                                    sessionNanos.add(result.sessionNanos);
+                                    outputBytes.addAndGet(result.bytes);
+                                } else {
+                                    failures.incrementAndGet();
+                                }
+                            })
+                            .onErrorResume(e -> {
+                                failures.incrementAndGet();
+                                return Mono.empty();
+                            });
+                }, CONCURRENCY)
+                .blockLast();
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("sessions=%d concurrency=%d failures=%d elapsed=%.2fs sessions/sec=%.1f%n",
+                SESSIONS, CONCURRENCY, failures.get(), elapsedSeconds, sessionNanos.size() / elapsedSeconds);
+        System.out.printf("first byte ms: p50=%.1f p99=%.1f max=%.1f%n",
+                percentile(firstByteNanos, 0.50), percentile(firstByteNanos, 0.99), percentile(firstByteNanos, 1.0));
+        System.out.printf("session ms:    p50=%.1f p99=%.1f max=%.1f%n",
+                percentile(sessionNanos, 0.50), percentile(sessionNanos, 0.99), percentile(sessionNanos, 1.0));
+        System.out.printf("output: %d bytes, %.1f KiB/s; containers created=%d removed=%d%n",
+                outputBytes.get(), outputBytes.get() / 1024.0 / elapsedSeconds, daemon.getCreated(), daemon.getRemoved());
+
+        assertEquals(0, failures.get());
+    }
+
+    private static Mono<Void> runSession(WebSocketSession session, SessionResult result) {
+        long start = System.nanoTime();
+        Sinks.Many<String> outbound = Sinks.many().unicast().onBackpressureBuffer();
+        outbound.tryEmitNext(REQUEST);
+        AtomicBoolean stdinSent = new AtomicBoolean();
+
+        Mono<Void> send = session.send(outbound.asFlux().map(session::textMessage));
+        Mono<Void> receive = session.receive()
+                .map(message -> {
+                    result.bytes += message.getPayload().readableByteCount();
+                    return message.getPayloadAsText();
+                })
+                // queue position notices are not program output
+                .filter(text -> !text.startsWith("Waiting for a free sandbox"))
+                .doOnNext(text -> {
+                    if (result.firstByteNanos == 0) {
+                        result.firstByteNanos = System.nanoTime() - start;
+                    }
+                    // the PTY is attached once output flows, input sent earlier would be dropped
+                    if (stdinSent.compareAndSet(false, true)) {
+                        outbound.tryEmitNext("ping\n");
+                    }
+                    if (text.contains("read: ping")) {
+                        result.echoed = true;
+                    }
+                })
+                // errors end the run without an exit status; the session then counts as failed
+                .takeUntil(text -> text.contains(EXIT_MARKER) || text.startsWith("Error:"))
+                .doOnComplete(() -> {
+                    result.sessionNanos = System.nanoTime() - start;
+                    outbound.tryEmitComplete();
+                })
+                .then();
+        return Mono.when(send, receive);
+    }
+
+    private static double percentile(Queue<Long> nanos, double quantile) {
+        if (nanos.isEmpty()) {
+            return 0;
+        }
+        List<Long> sorted = new ArrayList<>(nanos);
+        Collections.sort(sorted);
+        int index = (int) Math.ceil(quantile * sorted.size()) - 1;
+        return sorted.get(Math.max(0, index)) / 1e6;
+    }
+
+    // written from the session's receive pipeline only, read after it has completed
+    private static final class SessionResult {
+        long firstByteNanos;
+        long sessionNanos;
+        long bytes;
+        boolean echoed;
+
+        boolean completed() {
+            return sessionNanos > 0 && echoed;
+        }
+    }
+}
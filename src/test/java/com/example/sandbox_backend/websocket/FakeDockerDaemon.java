@@ -0,0 +1,99 @@
+package com.example.sandbox_backend.websocket;
+
+import io.netty.channel.unix.DomainSocketAddress;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in for the Docker daemon: answers the Engine API calls the backend makes over a unix
+ * socket with configurable create/start latency, and writes a {@code docker} shim that the PTY
+ * runs instead of {@code docker exec}. The shim simulates start-up latency and program output,
+ * then echoes one line of stdin.
+ */
+final class FakeDockerDaemon implements AutoCloseable {
+
+    private static final String API = "/v1.41";
+
+    private final DisposableServer server;
+    private final Path socketPath;
+    private final Path cliPath;
+    private final AtomicLong ids = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong removed = new AtomicLong();
+
+    FakeDockerDaemon(Path dir, Duration createLatency, Duration execLatency, int outputLines) throws IOException {
+        this.socketPath = dir.resolve("docker.sock");
+        this.cliPath = writeShim(dir.resolve("docker"), execLatency, outputLines);
+        this.server = HttpServer.create()
+                .bindAddress(() -> new DomainSocketAddress(socketPath.toString()))
+                .route(routes -> routes
+                        .get(API + "/_ping", (req, res) -> res.sendString(Mono.just("OK")))
+                        .post(API + "/containers/create", (req, res) -> req.receive().then()
+                                .then(Mono.delay(createLatency))
+                                .then(Mono.defer(() -> {
+                                    created.incrementAndGet();
+                                    String id = String.format("%064x", ids.incrementAndGet());
+                                    return Mono.from(res.status(201).sendString(Mono.just("{\"Id\":\"" + id + "\"}")));
+                                })))
+                        .post(API + "/containers/{id}/start", (req, res) -> res.status(204).send())
+                        .get(API + "/containers/json", (req, res) -> res.sendString(Mono.just("[]")))
+                        .get(API + "/containers/{id}/json", (req, res) -> res
+                                .sendString(Mono.just("{\"State\":{\"Running\":true},\"NetworkSettings\":{\"Networks\":{}}}")))
+                        .delete(API + "/containers/{id}", (req, res) -> {
+                            removed.incrementAndGet();
+                            return res.status(204).send();
+                        })
+                        .put(API + "/containers/{id}/archive", (req, res) -> req.receive().then()
+                                .then(Mono.from(res.status(200).send())))
+                        .get(API + "/images/{name}/json", (req, res) -> res.sendString(Mono.just("{}"))))
+                .bindNow();
+    }
+
+    String getSocketPath() {
+        return socketPath.toString();
+    }
+
+    String getCliPath() {
+        return cliPath.toString();
+    }
+
+    long getCreated() {
+        return created.get();
+    }
+
+    long getRemoved() {
+        return removed.get();
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+    }
+
+    // Invoked as "<shim> exec -it <id> sh -c <command>"; the command itself is ignored
+    private static Path writeShim(Path path, Duration execLatency, int outputLines) throws IOException {
+        String script = """
+                #!/bin/sh
+                sleep %s
+                i=0
+                while [ $i -lt %d ]; do
+                  echo "output line $i of a simulated sandbox run"
+                  i=$((i + 1))
+                done
+                read -r line
+                echo "read: $line"
+                """.formatted(execLatency.toMillis() / 1000.0, outputLines);
+        Files.writeString(path, script, StandardCharsets.UTF_8);
+        Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rwxr-xr-x"));
+        return path;
+    }
+}
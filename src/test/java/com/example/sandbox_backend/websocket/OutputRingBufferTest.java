@@ -0,0 +1,50 @@
+package com.example.sandbox_backend.websocket;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OutputRingBufferTest {
+
+    @Test
+    void replaysFromOffsetAcrossTheWrap() {
+        OutputRingBuffer ring = new OutputRingBuffer(8);
+        try {
+            ring.write(bytes("abcdef"));
+            ring.write(bytes("ghij"));
+
+            // "ab" has been overwritten
+            assertEquals(2, ring.start());
+            assertEquals(10, ring.end());
+            assertEquals("cdefghij", string(ring.readFrom(0)));
+            assertEquals("hij", string(ring.readFrom(7)));
+            assertEquals("", string(ring.readFrom(10)));
+        } finally {
+            ring.release();
+        }
+    }
+
+    @Test
+    void keepsTheTailOfAWriteLongerThanTheRing() {
+        OutputRingBuffer ring = new OutputRingBuffer(4);
+        try {
+            ring.write(bytes("x"));
+            ring.write(bytes("0123456789"));
+
+            assertEquals(7, ring.start());
+            assertEquals("6789", string(ring.readFrom(0)));
+        } finally {
+            ring.release();
+        }
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static String string(byte[] bytes) {
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.sandbox_backend.websocket;
+
+import com.example.sandbox_backend.config.CustomConfig;
+import com.pty4j.PtyProcess;
+import com.pty4j.PtyProcessBuilder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Opens many interactive PTY sessions (each running {@code cat}) at once and counts how many
+ * of them are actually being served, i.e. have a reader blocked on their output. Run with
+ * {@code ./gradlew loadTest -Dload.sessions=2000}.
+ */
+@Tag("load")
+@EnabledOnOs(OS.LINUX)
+class PtySessionLoadTest {
+
+    private static final int SESSIONS = Integer.getInteger("load.sessions", 500);
+    private static final long TIMEOUT_MILLIS = Long.getLong("load.timeout-ms", 20_000);
+
+    @Test
+    void ptySchedulerServesEverySessionConcurrently() throws Exception {
+        Scheduler boundedElastic = Schedulers.newBoundedElastic(
+                Schedulers.DEFAULT_BOUNDED_ELASTIC_SIZE, Integer.MAX_VALUE, "elastic-load");
+        Scheduler ptyScheduler = new CustomConfig().ptyScheduler(false);
+        try {
+            int elasticCeiling = concurrentSessions(boundedElastic);
+            int ptyCeiling = concurrentSessions(ptyScheduler);
+
+            System.out.printf("sessions=%d boundedElastic=%d ptyScheduler=%d%n", SESSIONS, elasticCeiling, ptyCeiling);
+            assertEquals(SESSIONS, ptyCeiling);
+        } finally {
+            boundedElastic.dispose();
+            ptyScheduler.dispose();
+        }
+    }
+
+    private int concurrentSessions(Scheduler scheduler) throws Exception {
+        List<PtyProcess> processes = new ArrayList<>();
+        List<Disposable> readers = new ArrayList<>();
+        AtomicInteger served = new AtomicInteger();
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < SESSIONS; i++) {
+                PtyProcess process = new PtyProcessBuilder(new String[]{"cat"}).start();
+                processes.add(process);
+
+                AtomicBoolean firstChunk = new AtomicBoolean(true);
+                PtyOutputReader reader = new PtyOutputReader(process, DefaultDataBufferFactory.sharedInstance,
+                        Long.MAX_VALUE, new SimpleMeterRegistry());
+                // the subscription stays open: its reader keeps holding a thread like a live session
+                readers.add(reader.read(scheduler).subscribe(buffer -> {
+                    DataBufferUtils.release(buffer);
+                    if (firstChunk.compareAndSet(true, false)) {
+                        served.incrementAndGet();
+                    }
+                }));
+            }
+            for (PtyProcess process : processes) {
+                process.getOutputStream().write("ping\n".getBytes(StandardCharsets.UTF_8));
+                process.getOutputStream().flush();
+            }
+
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (served.get() < SESSIONS && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            System.out.printf("%s: %d/%d sessions served after %d ms%n", scheduler, served.get(), SESSIONS,
+                    (System.nanoTime() - start) / 1_000_000);
+            return served.get();
+        } finally {
+            readers.forEach(Disposable::dispose);
+            processes.forEach(PtyProcess::destroyForcibly);
+        }
+    }
+}